@@ -0,0 +1,351 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * This class describes artifacts already stored in an external binary repository. Instead of
+ * their content, a component version receives a manifest with the location, size and checksum
+ * of every artifact, which the repository reports without transferring the artifacts.
+ *
+ */
+public class ArtifactReferences {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    /**
+     * Name of the manifest file uploaded to the component version
+     */
+    public static final String MANIFEST_NAME = "ucd-references.json";
+
+    private static final int TIMEOUT = 30 * 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String LOCAL_ALGORITHM = "SHA-256";
+
+    // checksum headers of common repositories, strongest first
+    private static final String[][] CHECKSUM_HEADERS = {
+        {"X-Checksum-Sha256", "SHA-256"},
+        {"X-Checksum-Sha1", "SHA-1"},
+        {"X-Checksum-Md5", "MD5"}};
+
+    // checksum files published next to the artifacts, as in Maven layout repositories
+    private static final String[][] CHECKSUM_FILES = {
+        {".sha256", "SHA-256"},
+        {".sha1", "SHA-1"},
+        {".md5", "MD5"}};
+
+    /**
+     * Parse the configured references. Each line holds the url of an artifact, optionally
+     * preceded by the path it has in the version and an equals sign.
+     *
+     * @param spec The newline separated references
+     * @return The references, not resolved yet
+     * @throws AbortException if a line is not an absolute url or a path is used twice
+     */
+    public static ArtifactReferences parse(String spec) throws AbortException {
+        List<Reference> references = new ArrayList<Reference>();
+        Set<String> paths = new HashSet<String>();
+
+        for (String line : RestClientHelper.splitFiles(spec)) {
+            int separator = line.indexOf('=');
+            int scheme = line.indexOf(':');
+            String path = null;
+            String url = line;
+            // an equals sign inside the url, such as in its query, does not separate a path
+            if (separator > 0 && (scheme < 0 || separator < scheme)) {
+                path = line.substring(0, separator).trim();
+                url = line.substring(separator + 1).trim();
+            }
+
+            URI uri;
+            try {
+                uri = new URI(url);
+            }
+            catch (URISyntaxException ex) {
+                throw new AbortException("Invalid artifact reference '" + line + "' : " + ex.getMessage());
+            }
+            if (!uri.isAbsolute() || uri.getPath() == null) {
+                throw new AbortException("Artifact reference '" + line + "' is not an absolute url.");
+            }
+
+            if (path == null || path.isEmpty()) {
+                path = uri.getPath().substring(uri.getPath().lastIndexOf('/') + 1);
+            }
+            if (path.isEmpty()) {
+                throw new AbortException("Artifact reference '" + line + "' does not name a file.");
+            }
+            if (!paths.add(path)) {
+                throw new AbortException("Artifact path '" + path + "' is referenced more than once.");
+            }
+
+            references.add(new Reference(path, uri));
+        }
+
+        if (references.isEmpty()) {
+            throw new AbortException("No artifact references are configured.");
+        }
+
+        return new ArtifactReferences(references);
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private List<Reference> references;
+
+    private ArtifactReferences(List<Reference> references) {
+        this.references = references;
+    }
+
+    /**
+     * @return The number of referenced artifacts
+     */
+    public int size() {
+        return references.size();
+    }
+
+    /**
+     * @return The total size of the referenced artifacts in bytes, once resolved
+     */
+    public long getTotalSize() {
+        long total = 0;
+        for (Reference reference : references) {
+            total += reference.size;
+        }
+        return total;
+    }
+
+    /**
+     * Ask the repository for the size and checksum of every artifact. Http repositories answer
+     * with the headers of a HEAD request or a checksum file, local files are hashed in place.
+     *
+     * @param log The log to print every resolved artifact to
+     * @throws IOException if an artifact is missing or its size or checksum is not reported
+     */
+    public void resolve(PrintStream log) throws IOException {
+        CloseableHttpClient client = null;
+        try {
+            for (Reference reference : references) {
+                if ("file".equalsIgnoreCase(reference.uri.getScheme())) {
+                    resolveFile(reference);
+                }
+                else {
+                    if (client == null) {
+                        RequestConfig config = RequestConfig.custom()
+                                .setConnectTimeout(TIMEOUT)
+                                .setSocketTimeout(TIMEOUT)
+                                .build();
+                        client = HttpClients.custom().useSystemProperties().setDefaultRequestConfig(config).build();
+                    }
+                    resolveHttp(client, reference);
+                }
+                log.println("Referencing " + reference.path + " (" + reference.size + " bytes, "
+                        + reference.algorithm + " " + reference.checksum + ") at " + reference.uri);
+            }
+        }
+        finally {
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    /**
+     * Write the manifest listing every resolved artifact
+     *
+     * @param file The manifest file, its directory is created if needed
+     * @throws IOException
+     */
+    public void writeManifest(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+
+        JsonGenerator generator = new JsonFactory().createGenerator(file, JsonEncoding.UTF8);
+        try {
+            generator.useDefaultPrettyPrinter();
+            generator.writeStartArray();
+            for (Reference reference : references) {
+                generator.writeStartObject();
+                generator.writeStringField("path", reference.path);
+                generator.writeStringField("url", reference.uri.toString());
+                generator.writeNumberField("size", reference.size);
+                generator.writeStringField("algorithm", reference.algorithm);
+                generator.writeStringField("checksum", reference.checksum);
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        finally {
+            generator.close();
+        }
+    }
+
+    private void resolveFile(Reference reference) throws IOException {
+        File file = new File(reference.uri);
+        if (!file.isFile()) {
+            throw new IOException("Referenced artifact " + reference.uri + " does not exist.");
+        }
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(LOCAL_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IOException(LOCAL_ALGORITHM + " is not supported", ex);
+        }
+
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        reference.size = file.length();
+        reference.algorithm = LOCAL_ALGORITHM;
+        reference.checksum = Hex.encodeHexString(digest.digest());
+    }
+
+    private void resolveHttp(CloseableHttpClient client, Reference reference) throws IOException {
+        HttpHead head = new HttpHead(reference.uri);
+        try {
+            HttpResponse response = execute(client, head);
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("Referenced artifact " + reference.uri + " was not found, status "
+                        + response.getStatusLine().getStatusCode());
+            }
+
+            Header length = response.getFirstHeader("Content-Length");
+            try {
+                reference.size = length != null ? Long.parseLong(length.getValue().trim()) : -1;
+            }
+            catch (NumberFormatException ex) {
+                reference.size = -1;
+            }
+            if (reference.size < 0) {
+                throw new IOException("Repository does not report the size of " + reference.uri);
+            }
+
+            for (String[] checksumHeader : CHECKSUM_HEADERS) {
+                Header header = response.getFirstHeader(checksumHeader[0]);
+                if (header != null && isHex(header.getValue().trim())) {
+                    reference.algorithm = checksumHeader[1];
+                    reference.checksum = header.getValue().trim().toLowerCase();
+                    return;
+                }
+            }
+
+            // RFC 3230 instance digest, base64 encoded
+            for (Header header : response.getHeaders("Digest")) {
+                for (String digest : header.getValue().split(",")) {
+                    int separator = digest.indexOf('=');
+                    if (separator > 0) {
+                        String algorithm = digest.substring(0, separator).trim().toUpperCase();
+                        if ("SHA-256".equals(algorithm) || "SHA".equals(algorithm) || "MD5".equals(algorithm)) {
+                            reference.algorithm = "SHA".equals(algorithm) ? "SHA-1" : algorithm;
+                            reference.checksum =
+                                    Hex.encodeHexString(Base64.decodeBase64(digest.substring(separator + 1).trim()));
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        finally {
+            head.releaseConnection();
+        }
+
+        for (String[] checksumFile : CHECKSUM_FILES) {
+            HttpGet get = new HttpGet(reference.uri.toString() + checksumFile[0]);
+            try {
+                HttpResponse response = execute(client, get);
+                if (response.getStatusLine().getStatusCode() == 200 && response.getEntity() != null) {
+                    // the checksum may be followed by the file name
+                    String[] tokens = EntityUtils.toString(response.getEntity()).trim().split("\\s+");
+                    if (isHex(tokens[0])) {
+                        reference.algorithm = checksumFile[1];
+                        reference.checksum = tokens[0].toLowerCase();
+                        return;
+                    }
+                }
+            }
+            finally {
+                get.releaseConnection();
+            }
+        }
+
+        throw new IOException("Repository does not report a checksum of " + reference.uri);
+    }
+
+    private static HttpResponse execute(CloseableHttpClient client, HttpRequestBase method) throws IOException {
+        try {
+            return client.execute(method);
+        }
+        catch (IOException ex) {
+            throw new IOException("Request to " + method.getURI() + " failed : " + ex.getMessage(), ex);
+        }
+    }
+
+    private static boolean isHex(String value) {
+        return value.length() >= 32 && value.matches("[0-9a-fA-F]+");
+    }
+
+    /**
+     * An artifact in the repository and the path it has in the version
+     */
+    private static class Reference {
+        final private String path;
+        final private URI uri;
+        private long size;
+        private String algorithm;
+        private String checksum;
+
+        private Reference(String path, URI uri) {
+            this.path = path;
+            this.uri = uri;
+        }
+    }
+}
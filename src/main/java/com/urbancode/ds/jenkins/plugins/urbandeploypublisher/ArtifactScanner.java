@@ -0,0 +1,100 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+/**
+ * This class lists the artifact files matched by the include and exclude patterns
+ *
+ */
+public class ArtifactScanner {
+
+    private ArtifactScanner() {
+    }
+
+    /**
+     * List the files below the working directory matching the include and exclude patterns
+     *
+     * @param workDir The directory to scan
+     * @param includes The include patterns
+     * @param excludes The exclude patterns
+     * @return The sorted relative paths of the matched files, using '/' as separator
+     */
+    public static String[] scan(File workDir, String[] includes, String[] excludes) {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(workDir);
+        if (includes.length > 0) {
+            scanner.setIncludes(includes);
+        }
+        scanner.setExcludes(excludes);
+        scanner.scan();
+
+        String[] paths = scanner.getIncludedFiles();
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = paths[i].replace('\\', '/');
+        }
+        Arrays.sort(paths);
+
+        return paths;
+    }
+
+    /**
+     * Turn relative file paths into include and exclude patterns that match those files only.
+     * Ant patterns cannot escape wildcards, so a '*' or '?' in a path is matched by '?' and the
+     * other files of the directory these includes also match are excluded again. A file whose
+     * exclude would also exclude one of the paths is left included.
+     *
+     * @param workDir The directory the paths are relative to
+     * @param paths The relative paths, using '/' as separator
+     * @return The include patterns at index 0 and the exclude patterns at index 1
+     */
+    public static String[][] literalPatterns(File workDir, String[] paths) {
+        String[] includes = new String[paths.length];
+        boolean wildcards = false;
+        for (int i = 0; i < paths.length; i++) {
+            includes[i] = toPattern(paths[i]);
+            wildcards |= !includes[i].equals(paths[i]);
+        }
+
+        List<String> excludes = new ArrayList<String>();
+        if (wildcards) {
+            Set<String> wanted = new HashSet<String>(Arrays.asList(paths));
+            for (String path : scan(workDir, includes, new String[0])) {
+                if (!wanted.contains(path)) {
+                    String exclude = toPattern(path);
+                    if (!matchesAny(exclude, paths)) {
+                        excludes.add(exclude);
+                    }
+                }
+            }
+        }
+
+        return new String[][] {includes, excludes.toArray(new String[excludes.size()])};
+    }
+
+    private static String toPattern(String path) {
+        return path.replace('*', '?');
+    }
+
+    private static boolean matchesAny(String pattern, String[] paths) {
+        for (String path : paths) {
+            if (SelectorUtils.matchPath(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
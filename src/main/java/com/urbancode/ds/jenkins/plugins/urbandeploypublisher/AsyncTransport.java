@@ -0,0 +1,282 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.util.Secret;
+
+import java.io.IOException;
+import java.net.URI;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.ssl.TrustStrategy;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * This class sends the plugin's own GET requests to UCD over a shared non-blocking client.
+ * A small number of I/O threads multiplexes all in-flight requests of the JVM over pooled
+ * keep-alive connections. Requests read with {@link #read(URI, JsonStream.ResponseHandler, Completion)}
+ * hold no thread while they are in flight, the other methods send their requests concurrently
+ * and then wait for the responses on the calling thread. Calls made through the UCD rest client
+ * library still use its blocking client.
+ *
+ */
+public class AsyncTransport {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final int IO_THREADS = Math.min(2, Runtime.getRuntime().availableProcessors());
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+    private static final int MAX_CONNECTIONS = 100;
+    private static final int CONNECT_TIMEOUT = 30 * 1000;
+    private static final int SOCKET_TIMEOUT = 5 * 60 * 1000;
+
+    // one client for verified and one for trusted certificates, credentials are sent per request
+    private static final Map<Boolean, CloseableHttpAsyncClient> CLIENTS =
+            new HashMap<Boolean, CloseableHttpAsyncClient>();
+
+    private static synchronized CloseableHttpAsyncClient getClient(boolean trustAllCerts) throws IOException {
+        CloseableHttpAsyncClient client = CLIENTS.get(trustAllCerts);
+
+        if (client == null || !client.isRunning()) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadFactory threadFactory = new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "UCD async transport I/O " + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+
+            SSLContext sslContext;
+            try {
+                if (trustAllCerts) {
+                    sslContext = SSLContexts.custom().loadTrustMaterial((KeyStore) null, new TrustStrategy() {
+                        @Override
+                        public boolean isTrusted(X509Certificate[] chain, String authType) {
+                            return true;
+                        }
+                    }).build();
+                }
+                else {
+                    sslContext = SSLContexts.createSystemDefault();
+                }
+            }
+            catch (GeneralSecurityException ex) {
+                throw new IOException("Could not initialize SSL context: " + ex.getMessage());
+            }
+
+            client = HttpAsyncClients.custom()
+                    .setThreadFactory(threadFactory)
+                    .setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(IO_THREADS).build())
+                    .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+                    .setMaxConnTotal(MAX_CONNECTIONS)
+                    .setSSLContext(sslContext)
+                    .setSSLHostnameVerifier(trustAllCerts ? NoopHostnameVerifier.INSTANCE : null)
+                    .build();
+            client.start();
+            CLIENTS.put(trustAllCerts, client);
+        }
+
+        return client;
+    }
+
+    /**
+     * Receives the outcome of a request read without waiting for it
+     */
+    public interface Completion {
+
+        /**
+         * Called on an I/O thread after the response handler parsed the body
+         */
+        void completed();
+
+        /**
+         * Called on an I/O thread if the request or the parsing of its response failed
+         *
+         * @param ex The failure
+         */
+        void failed(IOException ex);
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String authorization;
+    final private boolean trustAllCerts;
+
+    /**
+     * @param user The user to authenticate as
+     * @param password The password of the user
+     * @param trustAllCerts Whether to trust all ssl certificates
+     */
+    public AsyncTransport(String user, Secret password, boolean trustAllCerts) {
+        String credentials = user + ":" + Secret.toString(password);
+        try {
+            this.authorization = "Basic " + new String(Base64.encodeBase64(credentials.getBytes("UTF-8")), "US-ASCII");
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        this.trustAllCerts = trustAllCerts;
+    }
+
+    /**
+     * Start a GET request without waiting for the response
+     *
+     * @param uri The uri to request
+     * @param timeout The connect and read timeout in milliseconds, 0 for the default
+     * @return The future response with a fully buffered entity
+     * @throws IOException
+     */
+    public Future<HttpResponse> execute(URI uri, int timeout) throws IOException {
+        HttpGet method = new HttpGet(uri);
+        method.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        method.setConfig(RequestConfig.custom()
+                .setConnectTimeout(timeout > 0 ? timeout : CONNECT_TIMEOUT)
+                .setSocketTimeout(timeout > 0 ? timeout : SOCKET_TIMEOUT)
+                .build());
+
+        return getClient(trustAllCerts).execute(method, null);
+    }
+
+    /**
+     * Start a GET request and parse its response on an I/O thread once it arrives, without a
+     * thread waiting for it. The handler and the completion must not block.
+     *
+     * @param uri The uri to request
+     * @param handler The handler parsing the response body
+     * @param completion Receives the outcome of the request
+     * @throws IOException if the request could not be started
+     */
+    public void read(final URI uri, final JsonStream.ResponseHandler handler, final Completion completion)
+            throws IOException {
+        HttpGet method = new HttpGet(uri);
+        method.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        method.setConfig(RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setSocketTimeout(SOCKET_TIMEOUT)
+                .build());
+
+        getClient(trustAllCerts).execute(method, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    int responseCode = response.getStatusLine().getStatusCode();
+                    if (responseCode != 200) {
+                        String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                        throw new IOException("Request to " + uri + " failed with status " + responseCode
+                                + " : " + body);
+                    }
+                    if (response.getEntity() == null) {
+                        throw new IOException("Request to " + uri + " returned no content");
+                    }
+                    JsonStream.read(response.getEntity().getContent(), 0, handler);
+                }
+                catch (IOException ex) {
+                    completion.failed(ex);
+                    return;
+                }
+                completion.completed();
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                completion.failed(new IOException("Request to " + uri + " failed : " + ex.getMessage()));
+            }
+
+            @Override
+            public void cancelled() {
+                completion.failed(new IOException("Request to " + uri + " was cancelled"));
+            }
+        });
+    }
+
+    /**
+     * Wait for the response of a request started with {@link #execute(URI, int)}
+     *
+     * @param uri The requested uri
+     * @param future The future response
+     * @return The response
+     * @throws IOException
+     */
+    public HttpResponse await(URI uri, Future<HttpResponse> future) throws IOException {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + uri);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            throw new IOException("Request to " + uri + " failed : " + cause.getMessage());
+        }
+    }
+
+    /**
+     * Execute GET requests concurrently and parse their response bodies. The responses arrive
+     * buffered as bytes and are parsed from that buffer, without decoding them to a string first.
+     *
+     * @param uris The uris to request
+     * @param handler The handler parsing each response body, called in the order of the uris
+     * @throws IOException if any request fails
+     */
+    public void read(List<URI> uris, JsonStream.ResponseHandler handler) throws IOException {
+        List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+        try {
+            for (URI uri : uris) {
+                futures.add(execute(uri, 0));
+            }
+
+            for (int i = 0; i < uris.size(); i++) {
+                HttpResponse response = await(uris.get(i), futures.get(i));
+                int responseCode = response.getStatusLine().getStatusCode();
+                if (responseCode != 200) {
+                    String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                    throw new IOException("Request to " + uris.get(i) + " failed with status " + responseCode
+                            + " : " + body);
+                }
+                if (response.getEntity() == null) {
+                    throw new IOException("Request to " + uris.get(i) + " returned no content");
+                }
+                JsonStream.read(response.getEntity().getContent(), i, handler);
+            }
+        }
+        finally {
+            // abandon the remaining requests if one failed
+            for (Future<HttpResponse> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * This class holds the handles of the publishes a build started in the background
+ * until they are awaited by the {@link UrbanDeployAwaitPublisher}, or by the build
+ * itself once it completes
+ *
+ */
+public class BackgroundPublishAction extends InvisibleAction {
+
+    // the handles are only meaningful while the build is running
+    private transient Map<String, Future<Boolean>> publishes;
+
+    /**
+     * Register a background publish
+     *
+     * @param name A description of the published component version
+     * @param publish The handle of the running publish
+     */
+    public synchronized void add(String name, Future<Boolean> publish) {
+        if (publishes == null) {
+            publishes = new LinkedHashMap<String, Future<Boolean>>();
+        }
+        publishes.put(name, publish);
+    }
+
+    /**
+     * Remove and return all publishes that have not been awaited yet
+     *
+     * @return The publish handles by description, in start order
+     */
+    public synchronized Map<String, Future<Boolean>> takeAll() {
+        Map<String, Future<Boolean>> taken = publishes;
+        publishes = null;
+        return taken != null ? taken : new LinkedHashMap<String, Future<Boolean>>();
+    }
+
+    /**
+     * Wait for all publishes that have not been awaited yet
+     *
+     * @param listener The listener to log the outcome of every publish to
+     * @return The descriptions of the failed publishes
+     * @throws InterruptedException if the wait was interrupted, the remaining publishes are cancelled
+     */
+    public List<String> awaitAll(TaskListener listener) throws InterruptedException {
+        List<String> failures = new ArrayList<String>();
+
+        Iterator<Map.Entry<String, Future<Boolean>>> publishes = takeAll().entrySet().iterator();
+        while (publishes.hasNext()) {
+            Map.Entry<String, Future<Boolean>> publish = publishes.next();
+            listener.getLogger().println("Waiting for background publish of " + publish.getKey() + ".");
+            try {
+                if (publish.getValue().get()) {
+                    listener.getLogger().println("Background publish of " + publish.getKey() + " finished.");
+                }
+                else {
+                    listener.error("Background publish of " + publish.getKey() + " failed.");
+                    failures.add(publish.getKey());
+                }
+            }
+            catch (InterruptedException ex) {
+                publish.getValue().cancel(true);
+                while (publishes.hasNext()) {
+                    publishes.next().getValue().cancel(true);
+                }
+                throw ex;
+            }
+            catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                listener.error("Background publish of " + publish.getKey() + " failed: " + cause.getMessage());
+                failures.add(publish.getKey());
+            }
+        }
+
+        return failures;
+    }
+
+    /**
+     * Cancel all publishes that have not been awaited yet
+     *
+     * @return The descriptions of the publishes that were still running
+     */
+    public List<String> cancelAll() {
+        List<String> cancelled = new ArrayList<String>();
+        for (Map.Entry<String, Future<Boolean>> publish : takeAll().entrySet()) {
+            if (publish.getValue().cancel(true)) {
+                cancelled.add(publish.getKey());
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Joins the background publishes no await step waited for before the build completes, so a
+     * publish never outlives the build whose listener and node it uses, and cancels them when the
+     * build was aborted or deleted. The workspace is already released at this point, the publishes
+     * read the copy of the artifacts staged before the publisher returned.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class BackgroundPublishListener extends RunListener<AbstractBuild> {
+
+        public BackgroundPublishListener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            BackgroundPublishAction action = build.getAction(BackgroundPublishAction.class);
+            if (action == null) {
+                return;
+            }
+
+            if (build.getResult() == Result.ABORTED) {
+                for (String name : action.cancelAll()) {
+                    listener.getLogger().println("Cancelled background publish of " + name
+                            + ", the build was aborted.");
+                }
+                return;
+            }
+
+            try {
+                List<String> failures = action.awaitAll(listener);
+                if (!failures.isEmpty()) {
+                    listener.error("Background publish to IBM UrbanCode Deploy failed for " + failures);
+                    build.setResult(Result.FAILURE);
+                }
+            }
+            catch (InterruptedException ex) {
+                listener.error("Cancelled background publishes, the wait for them was interrupted.");
+                build.setResult(Result.ABORTED);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void onDeleted(AbstractBuild build) {
+            BackgroundPublishAction action = build.getAction(BackgroundPublishAction.class);
+            if (action != null) {
+                action.cancelAll();
+            }
+        }
+    }
+}
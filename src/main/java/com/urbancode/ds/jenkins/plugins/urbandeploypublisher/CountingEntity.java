@@ -0,0 +1,77 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * This class counts the bytes of a request body while the client writes it to the connection,
+ * so the progress of an upload is measured on the wire rather than per completed request.
+ * Every fully written body counts as one uploaded file.
+ *
+ */
+public class CountingEntity extends HttpEntityWrapper {
+
+    /**
+     * Create an interceptor that wraps the body of every request sent by a client
+     *
+     * @param progress The progress to add the written bytes and files to
+     * @return The interceptor
+     */
+    public static HttpRequestInterceptor interceptor(final UploadProgress progress) {
+        return new HttpRequestInterceptor() {
+            @Override
+            public void process(HttpRequest request, HttpContext context) {
+                if (request instanceof HttpEntityEnclosingRequest) {
+                    HttpEntityEnclosingRequest enclosingRequest = (HttpEntityEnclosingRequest) request;
+                    HttpEntity entity = enclosingRequest.getEntity();
+                    if (entity != null && !(entity instanceof CountingEntity)) {
+                        enclosingRequest.setEntity(new CountingEntity(entity, progress));
+                    }
+                }
+            }
+        };
+    }
+
+    final private UploadProgress progress;
+
+    /**
+     * @param entity The body to count
+     * @param progress The progress to add the written bytes and files to
+     */
+    public CountingEntity(HttpEntity entity, UploadProgress progress) {
+        super(entity);
+        this.progress = progress;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        super.writeTo(new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                progress.add(0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                progress.add(0, len);
+            }
+        });
+        progress.add(1, 0);
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.Extension;
+import hudson.model.UnprotectedRootAction;
+import hudson.security.csrf.CrumbExclusion;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+/**
+ * This class exposes the endpoint an application process calls when it finishes, waking the
+ * build that waits for the deployment result instead of letting it poll
+ *
+ */
+@Extension
+public class DeploymentCallbackAction implements UnprotectedRootAction {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    public static final String URL_NAME = "ucd-deployment-callback";
+
+    /**
+     * Name of the application process request property holding the callback url
+     */
+    public static final String CALLBACK_PROPERTY = "jenkinsCallbackUrl";
+
+    private static final ConcurrentMap<String, Waiter> WAITERS = new ConcurrentHashMap<String, Waiter>();
+
+    /**
+     * Register a waiter identified by a new unguessable token
+     *
+     * @return The waiter, which must be closed when the wait is over
+     */
+    public static Waiter register() {
+        Waiter waiter = new Waiter(UUID.randomUUID().toString());
+        WAITERS.put(waiter.getToken(), waiter);
+        return waiter;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return URL_NAME;
+    }
+
+    /**
+     * Notify the build waiting with the given token that its deployment finished
+     *
+     * @param token
+     * @param rsp
+     * @throws IOException
+     */
+    @RequirePOST
+    public void doNotify(@QueryParameter("token") String token, StaplerResponse rsp) throws IOException {
+        Waiter waiter = token != null ? WAITERS.get(token) : null;
+
+        if (waiter == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND, "No deployment is waiting for this token.");
+            return;
+        }
+
+        waiter.signal();
+        rsp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    /**
+     * A build waiting for the callback of its deployment
+     */
+    public static class Waiter {
+        final private String token;
+        private boolean notified;
+
+        private Waiter(String token) {
+            this.token = token;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        /**
+         * @return The callback url relative to the Jenkins root url
+         */
+        public String getUrl() {
+            return URL_NAME + "/notify?token=" + token;
+        }
+
+        private synchronized void signal() {
+            notified = true;
+            notifyAll();
+        }
+
+        /**
+         * Wait until the callback arrives or the timeout passes
+         *
+         * @param timeout The maximum time to wait in milliseconds
+         * @return Whether the callback arrived
+         * @throws InterruptedException
+         */
+        public synchronized boolean await(long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+
+            while (!notified && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            boolean wasNotified = notified;
+            notified = false;
+            return wasNotified;
+        }
+
+        /**
+         * Stop accepting callbacks for this waiter
+         */
+        public void close() {
+            WAITERS.remove(token);
+        }
+    }
+
+    /**
+     * Lets UCD post to the callback endpoint without a crumb, the token authorizes the call
+     */
+    @Extension
+    public static class CallbackCrumbExclusion extends CrumbExclusion {
+        @Override
+        public boolean process(HttpServletRequest req, HttpServletResponse resp, FilterChain chain)
+                throws IOException, ServletException {
+            String pathInfo = req.getPathInfo();
+            if (pathInfo != null && pathInfo.startsWith("/" + URL_NAME + "/")) {
+                chain.doFilter(req, resp);
+                return true;
+            }
+            return false;
+        }
+    }
+}
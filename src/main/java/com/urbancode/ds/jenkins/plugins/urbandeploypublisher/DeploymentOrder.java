@@ -0,0 +1,135 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.BuildListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class orders the deployment requests of concurrent builds publishing the same component
+ * to the same site. Every publish takes a ticket when it reaches the publish step, and deployment
+ * requests are created in ticket order. Builds create and upload their versions in parallel, and
+ * a build whose turn comes after a later build already requested its deployment skips its own,
+ * so an older version is never deployed over a newer one.
+ *
+ */
+public class DeploymentOrder {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final Map<String, DeploymentOrder> ORDERS = new HashMap<String, DeploymentOrder>();
+
+    /**
+     * Take the next ticket of a component, which must be left in a finally block
+     *
+     * @param site The display name of the site
+     * @param component The resolved component name
+     * @return The ticket
+     */
+    public static Ticket enter(String site, String component) {
+        String key = site + "\n" + component;
+        synchronized (ORDERS) {
+            DeploymentOrder order = ORDERS.get(key);
+            if (order == null) {
+                order = new DeploymentOrder(key, component);
+                ORDERS.put(key, order);
+            }
+            order.users++;
+            return order.new Ticket(++order.lastTicket);
+        }
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String key;
+    final private String component;
+    // fair, so builds requesting deployments get their turn in arrival order
+    final private ReentrantLock lock = new ReentrantLock(true);
+    // the builds holding a ticket and the last ticket taken, guarded by ORDERS
+    private int users;
+    private long lastTicket;
+    // the ticket and version of the last deployment request, guarded by lock
+    private long deployedTicket;
+    private String deployedVersion;
+
+    private DeploymentOrder(String key, String component) {
+        this.key = key;
+        this.component = component;
+    }
+
+    /**
+     * The place of one publish in the order of its component
+     */
+    public class Ticket {
+        final private long number;
+        private boolean holding;
+
+        private Ticket(long number) {
+            this.number = number;
+        }
+
+        /**
+         * Wait for the turn to request a deployment. When this returns true the deployment request
+         * must be created and {@link #requested(String)} called, or the ticket left.
+         *
+         * @param version The version about to be deployed
+         * @param listener The listener to report waiting and skipping on
+         * @return Whether to request the deployment, false if a later build already deployed a newer version
+         * @throws InterruptedException if the build is aborted while waiting
+         */
+        public boolean awaitTurn(String version, BuildListener listener) throws InterruptedException {
+            if (!lock.tryLock()) {
+                listener.getLogger().println("Waiting for another build requesting a deployment of component "
+                        + component + ".");
+                lock.lockInterruptibly();
+            }
+
+            if (deployedTicket > number) {
+                lock.unlock();
+                listener.getLogger().println("Skip deploy application to IBM UrbanCode Deploy - a later build "
+                        + "already requested the deployment of component " + component + " version "
+                        + deployedVersion + ", which supersedes version " + version + ".");
+                return false;
+            }
+
+            holding = true;
+            return true;
+        }
+
+        /**
+         * Record the created deployment request and pass the turn on
+         *
+         * @param version The deployed version
+         */
+        public void requested(String version) {
+            deployedTicket = number;
+            deployedVersion = version;
+            holding = false;
+            lock.unlock();
+        }
+
+        /**
+         * Give up the ticket, and the turn if a deployment request failed while holding it
+         */
+        public void leave() {
+            if (holding) {
+                holding = false;
+                lock.unlock();
+            }
+            synchronized (ORDERS) {
+                if (--users == 0) {
+                    ORDERS.remove(key);
+                }
+            }
+        }
+    }
+}
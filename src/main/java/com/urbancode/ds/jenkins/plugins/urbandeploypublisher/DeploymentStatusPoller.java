@@ -0,0 +1,254 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class checks the status of every deployment that builds wait for on one server as one
+ * user from a single thread, instead of each waiting build polling on its own. Builds waiting
+ * for the same application process request share one entry and one status check, and the
+ * thread ends once no build waits anymore. With the non-blocking transport the thread only
+ * starts the checks that are due and the I/O threads deliver their results, so a slow response
+ * does not hold up the checks of other requests.
+ *
+ */
+public class DeploymentStatusPoller implements Runnable {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    // the longest the thread sleeps, so a poller that lost its last request ends soon
+    private static final long MAX_IDLE = 60 * 1000L;
+
+    // guards the pollers and the requests they watch
+    private static final Map<String, DeploymentStatusPoller> POLLERS = new HashMap<String, DeploymentStatusPoller>();
+
+    /**
+     * Start watching the status of an application process request
+     *
+     * @param clientHelper The helper of the waiting build, its server and user select the poller
+     * @param requestId The id of the application process request
+     * @param interval Milliseconds between status checks
+     * @return The watched request, which must be closed in a finally block
+     */
+    public static Request watch(RestClientHelper clientHelper, String requestId, long interval) {
+        String key = clientHelper.getUrl() + "\n" + clientHelper.getUserName();
+        DeploymentStatusPoller poller;
+        Request request;
+
+        synchronized (POLLERS) {
+            poller = POLLERS.get(key);
+            if (poller == null) {
+                poller = new DeploymentStatusPoller(key, clientHelper.copy());
+                POLLERS.put(key, poller);
+                poller.start();
+            }
+
+            request = poller.requests.get(requestId);
+            if (request == null) {
+                request = new Request(poller, requestId, interval);
+                poller.requests.put(requestId, request);
+            }
+            else {
+                request.interval = Math.min(request.interval, interval);
+            }
+            request.watchers++;
+        }
+
+        poller.wake();
+        return request;
+    }
+
+    /**
+     * @param result The status of an application process request
+     * @return Whether the request has finished, successfully or not
+     */
+    public static boolean isFinished(String result) {
+        return result != null
+                && !result.isEmpty()
+                && !result.equalsIgnoreCase("NONE")
+                && !result.equalsIgnoreCase("SCHEDULED FOR FUTURE");
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String key;
+    final private RestClientHelper clientHelper;
+    // guarded by POLLERS
+    final private Map<String, Request> requests = new HashMap<String, Request>();
+    private volatile boolean stopped;
+    private boolean wakeRequested;
+
+    private DeploymentStatusPoller(String key, RestClientHelper clientHelper) {
+        this.key = key;
+        this.clientHelper = clientHelper;
+    }
+
+    private void start() {
+        Thread thread = new Thread(this, "UCD deployment status poller");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private synchronized void wake() {
+        wakeRequested = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        while (!stopped) {
+            List<Request> due = new ArrayList<Request>();
+            long delay = MAX_IDLE;
+
+            synchronized (POLLERS) {
+                long now = System.currentTimeMillis();
+                for (Request request : requests.values()) {
+                    // a request is not checked again while its previous check is in flight,
+                    // the completion of that check wakes the thread
+                    if (request.checking) {
+                        continue;
+                    }
+                    if (request.nextCheck <= now) {
+                        due.add(request);
+                        request.checking = true;
+                        request.nextCheck = now + request.interval;
+                    }
+                    delay = Math.min(delay, request.nextCheck - now);
+                }
+            }
+
+            // one check per request, whatever the number of builds waiting for it
+            for (Request request : due) {
+                clientHelper.checkDeploymentProcessResult(request.requestId, request);
+            }
+
+            if (due.isEmpty()) {
+                synchronized (this) {
+                    try {
+                        if (!wakeRequested && delay > 0) {
+                            wait(delay);
+                        }
+                    }
+                    catch (InterruptedException ex) {
+                        return;
+                    }
+                    wakeRequested = false;
+                }
+            }
+        }
+    }
+
+    private void remove(Request request) {
+        synchronized (POLLERS) {
+            if (--request.watchers == 0) {
+                requests.remove(request.requestId);
+                if (requests.isEmpty()) {
+                    POLLERS.remove(key);
+                    stopped = true;
+                }
+            }
+        }
+        if (stopped) {
+            wake();
+        }
+    }
+
+    /**
+     * An application process request and the result of its latest status check
+     */
+    public static class Request implements RestClientHelper.StatusCallback {
+        final private DeploymentStatusPoller poller;
+        final private String requestId;
+        // guarded by POLLERS
+        private long interval;
+        private long nextCheck;
+        private int watchers;
+        private boolean checking;
+        // guarded by this request
+        private String result;
+        private String error;
+
+        private Request(DeploymentStatusPoller poller, String requestId, long interval) {
+            this.poller = poller;
+            this.requestId = requestId;
+            this.interval = interval;
+        }
+
+        @Override
+        public void status(String result, String error) {
+            synchronized (POLLERS) {
+                checking = false;
+            }
+            synchronized (this) {
+                this.result = result;
+                this.error = error;
+                notifyAll();
+            }
+            poller.wake();
+        }
+
+        /**
+         * Wait until the request has finished or the timeout passes
+         *
+         * @param timeout The maximum time to wait in milliseconds
+         * @return The result of the latest status check, null if none has been made yet
+         * @throws AbortException if the latest status check failed
+         * @throws InterruptedException
+         */
+        public synchronized String awaitResult(long timeout) throws AbortException, InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            long remaining = timeout;
+
+            while (error == null && !isFinished(result) && remaining > 0) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            return getResult();
+        }
+
+        /**
+         * @return The result of the latest status check, null if none has been made yet
+         * @throws AbortException if the latest status check failed
+         */
+        public synchronized String getResult() throws AbortException {
+            if (error != null) {
+                throw new AbortException(error);
+            }
+            return result;
+        }
+
+        /**
+         * Check the status right away and from then on at the given interval, such as when a
+         * callback reported that the request finished
+         *
+         * @param interval Milliseconds between the following status checks
+         */
+        public void checkNow(long interval) {
+            synchronized (POLLERS) {
+                this.interval = Math.min(this.interval, interval);
+                nextCheck = 0;
+            }
+            poller.wake();
+        }
+
+        /**
+         * Stop watching the request
+         */
+        public void close() {
+            poller.remove(this);
+        }
+    }
+}
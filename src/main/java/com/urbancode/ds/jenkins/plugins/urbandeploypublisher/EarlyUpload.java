@@ -0,0 +1,27 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * This interface controls an artifact upload that runs on the build node while the build
+ * is still producing artifacts. The controller calls it through a remoting proxy.
+ *
+ */
+public interface EarlyUpload {
+
+    /**
+     * Stop watching for new files and wait for the upload in progress to finish
+     *
+     * @return The file key of every uploaded file at the time it was uploaded, by relative path
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    Map<String, String> stop() throws IOException, InterruptedException;
+}
@@ -0,0 +1,177 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.Environment;
+import hudson.model.InvisibleAction;
+import hudson.model.Run.RunnerAbortedException;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * This class holds the uploads a build started on its node while it was still running,
+ * until the publisher of the component completes them after the build
+ *
+ */
+public class EarlyUploadAction extends InvisibleAction {
+
+    // the sessions are only meaningful while the build is running
+    private transient Map<String, Session> sessions;
+
+    /**
+     * Register an upload started during the build
+     *
+     * @param component The resolved name of the component
+     * @param session The running upload
+     */
+    public synchronized void add(String component, Session session) {
+        if (sessions == null) {
+            sessions = new LinkedHashMap<String, Session>();
+        }
+        sessions.put(component, session);
+    }
+
+    /**
+     * @param component The resolved name of the component
+     * @return Whether an upload was started for the component and not claimed yet
+     */
+    public synchronized boolean isStarted(String component) {
+        return sessions != null && sessions.containsKey(component);
+    }
+
+    /**
+     * @param component The resolved name of the component
+     * @return The running upload or null if none was started for the component or it was claimed
+     */
+    public synchronized Session get(String component) {
+        return sessions != null ? sessions.get(component) : null;
+    }
+
+    /**
+     * Remove and return the upload of a component
+     *
+     * @param component The resolved name of the component
+     * @return The running upload or null if none was started for the component
+     */
+    public synchronized Session claim(String component) {
+        return sessions != null ? sessions.remove(component) : null;
+    }
+
+    /**
+     * Remove and return all uploads that have not been claimed yet
+     *
+     * @return The running uploads by component, in start order
+     */
+    public synchronized Map<String, Session> takeAll() {
+        Map<String, Session> taken = sessions;
+        sessions = null;
+        return taken != null ? taken : new LinkedHashMap<String, Session>();
+    }
+
+    /**
+     * An upload running on the node of the build, and the version it uploads to
+     */
+    public static class Session {
+        final private UrbanDeployPublisher publisher;
+        final private EarlyUpload upload;
+        final private UUID versionId;
+        final private String version;
+
+        public Session(UrbanDeployPublisher publisher, EarlyUpload upload, UUID versionId, String version) {
+            this.publisher = publisher;
+            this.upload = upload;
+            this.versionId = versionId;
+            this.version = version;
+        }
+
+        public UrbanDeployPublisher getPublisher() {
+            return publisher;
+        }
+
+        public EarlyUpload getUpload() {
+            return upload;
+        }
+
+        public UUID getVersionId() {
+            return versionId;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Starts the uploads of freestyle builds before the build steps run, and removes the
+     * versions of uploads that no publisher completed once the build is finished
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class EarlyUploadListener extends RunListener<AbstractBuild> {
+
+        public EarlyUploadListener() {
+            super(AbstractBuild.class);
+        }
+
+        @Override
+        public Environment setUpEnvironment(AbstractBuild build, Launcher launcher, BuildListener listener)
+                throws IOException, InterruptedException, RunnerAbortedException {
+            for (Object publisher : build.getProject().getPublishersList()) {
+                if (publisher instanceof UrbanDeployPublisher
+                        && ((UrbanDeployPublisher) publisher).canUploadDuringBuild()) {
+                    try {
+                        ((UrbanDeployPublisher) publisher).startEarlyUpload(build, launcher, listener);
+                    }
+                    catch (IOException ex) {
+                        // the publisher uploads everything after the build instead
+                        listener.getLogger().println("[Warning] Could not start uploading to IBM UrbanCode Deploy "
+                                + "during the build: " + ex.getMessage());
+                    }
+                }
+            }
+            return new Environment() {};
+        }
+
+        @Override
+        public void onCompleted(AbstractBuild build, TaskListener listener) {
+            EarlyUploadAction action = build.getAction(EarlyUploadAction.class);
+            if (action == null) {
+                return;
+            }
+
+            for (Map.Entry<String, Session> entry : action.takeAll().entrySet()) {
+                Session session = entry.getValue();
+                try {
+                    session.getUpload().stop();
+                }
+                catch (Exception ex) {
+                    // the node may be gone, the version is deleted either way
+                }
+
+                listener.getLogger().println("Queueing deletion of component version '" + session.getVersion()
+                        + "' uploaded during the build, it was not published.");
+                UrbanDeployPublisher publisher = session.getPublisher();
+                try {
+                    VersionCleanupQueue.get().enqueue(publisher.getSite().getDisplayName(), publisher.getAltUser(),
+                            publisher.getAltPassword(), session.getVersionId(), entry.getKey(), session.getVersion());
+                }
+                catch (IOException ex) {
+                    listener.error("Failed to queue deletion of component version : " + ex.getMessage());
+                }
+            }
+        }
+    }
+}
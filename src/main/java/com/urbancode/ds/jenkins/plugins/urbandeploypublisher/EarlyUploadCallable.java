@@ -0,0 +1,87 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.BuildListener;
+import hudson.remoting.Callable;
+import hudson.remoting.Channel;
+
+import java.io.File;
+import java.io.IOException;
+
+import jenkins.security.Roles;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * This class is called on a channel to start an {@link EarlyUploadWatcher} on the build node
+ *
+ */
+public class EarlyUploadCallable implements Callable<EarlyUpload, IOException> {
+
+    private static final long serialVersionUID = 7712058335109866283L;
+
+    final private RestClientHelper clientHelper;
+    final private String baseDir;
+    final private String dirOffset;
+    final private String fileIncludePatterns;
+    final private String fileExcludePatterns;
+    final private String component;
+    final private String version;
+    final private BuildListener listener;
+
+    public EarlyUploadCallable(
+            RestClientHelper clientHelper,
+            String baseDir,
+            String dirOffset,
+            String fileIncludePatterns,
+            String fileExcludePatterns,
+            String component,
+            String version,
+            BuildListener listener)
+    {
+        this.clientHelper = clientHelper;
+        this.baseDir = baseDir;
+        this.dirOffset = dirOffset;
+        this.fileIncludePatterns = fileIncludePatterns != null ? fileIncludePatterns : "";
+        this.fileExcludePatterns = fileExcludePatterns != null ? fileExcludePatterns : "";
+        this.component = component;
+        this.version = version;
+        this.listener = listener;
+    }
+
+    /**
+     * Start the watcher
+     * @return A handle to stop the watcher, exported to the calling side
+     */
+    @Override
+    public EarlyUpload call() {
+        File workDir = new File(baseDir);
+        if (dirOffset != null && dirOffset.trim().length() > 0) {
+            workDir = new File(workDir, dirOffset.trim());
+        }
+
+        EarlyUploadWatcher watcher = new EarlyUploadWatcher(
+                clientHelper,
+                workDir,
+                RestClientHelper.splitFiles(fileIncludePatterns),
+                RestClientHelper.splitFiles(fileExcludePatterns),
+                component,
+                version,
+                listener);
+        watcher.start();
+
+        // there is no channel when the build runs on the controller itself
+        Channel channel = Channel.current();
+        return channel != null ? channel.export(EarlyUpload.class, watcher) : watcher;
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+        checker.check(this, Roles.SLAVE);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+import hudson.model.BuildListener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class watches the artifact directory on the build node during the build and uploads every
+ * matching file to the component version once its size and modification time stopped changing
+ *
+ */
+public class EarlyUploadWatcher implements EarlyUpload, Runnable {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final long POLL_INTERVAL = 10 * 1000L;
+    // a file must be unchanged for this long before it is considered finished
+    private static final long SETTLE_TIME = 5 * 1000L;
+    private static final int UPLOAD_BATCH_SIZE = 100;
+
+    /**
+     * Get a key that changes whenever the content of a file is likely to have changed
+     *
+     * @param file
+     * @return The size and modification time of the file
+     */
+    public static String getFileKey(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private RestClientHelper clientHelper;
+    final private File workDir;
+    final private String[] includes;
+    final private String[] excludes;
+    final private String component;
+    final private String version;
+    final private BuildListener listener;
+    final private Map<String, String> uploaded = new HashMap<String, String>();
+    final private Map<String, String> lastSeen = new HashMap<String, String>();
+    private volatile boolean stopped;
+    private Thread thread;
+
+    public EarlyUploadWatcher(
+            RestClientHelper clientHelper,
+            File workDir,
+            String[] includes,
+            String[] excludes,
+            String component,
+            String version,
+            BuildListener listener)
+    {
+        this.clientHelper = clientHelper;
+        this.workDir = workDir;
+        this.includes = includes;
+        this.excludes = excludes;
+        this.component = component;
+        this.version = version;
+        this.listener = listener;
+    }
+
+    /**
+     * Start watching in a daemon thread
+     */
+    public void start() {
+        thread = new Thread(this, "UCD early upload of " + component);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public Map<String, String> stop() throws InterruptedException {
+        stopped = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        // an upload in progress is completed, not interrupted
+        thread.join();
+        synchronized (uploaded) {
+            return new HashMap<String, String>(uploaded);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                if (workDir.isDirectory()) {
+                    uploadFinishedFiles();
+                }
+                synchronized (this) {
+                    if (!stopped) {
+                        wait(POLL_INTERVAL);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException ex) {
+            // the node is shutting down, the remaining files are uploaded after the build
+        }
+        catch (AbortException ex) {
+            listener.getLogger().println("[Warning] Uploading files during the build failed, the remaining files "
+                    + "are uploaded after the build: " + ex.getMessage());
+        }
+    }
+
+    private void uploadFinishedFiles() throws AbortException {
+        long settledBefore = System.currentTimeMillis() - SETTLE_TIME;
+        List<String> finished = new ArrayList<String>();
+        Map<String, String> finishedKeys = new HashMap<String, String>();
+
+        for (String path : ArtifactScanner.scan(workDir, includes, excludes)) {
+            File file = new File(workDir, path);
+            String key = getFileKey(file);
+
+            // a path is sent once, a file changed after its upload makes the publish step start the version over
+            synchronized (uploaded) {
+                if (uploaded.containsKey(path)) {
+                    continue;
+                }
+            }
+
+            // unchanged since the previous scan and not touched recently
+            if (key.equals(lastSeen.get(path)) && file.lastModified() < settledBefore) {
+                finished.add(path);
+                finishedKeys.put(path, key);
+            }
+            lastSeen.put(path, key);
+        }
+
+        for (int first = 0; first < finished.size() && !stopped; first += UPLOAD_BATCH_SIZE) {
+            List<String> batch = finished.subList(first, Math.min(finished.size(), first + UPLOAD_BATCH_SIZE));
+            String[][] patterns = ArtifactScanner.literalPatterns(workDir, batch.toArray(new String[batch.size()]));
+            clientHelper.uploadVersionFiles(
+                    workDir,
+                    component,
+                    version,
+                    patterns[0],
+                    patterns[1],
+                    false);
+
+            synchronized (uploaded) {
+                for (String path : batch) {
+                    uploaded.put(path, finishedKeys.get(path));
+                }
+            }
+            listener.getLogger().println("Uploaded " + batch.size() + " finished files to component " + component
+                    + " version " + version + " during the build.");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+/**
+ * This class records the probe results of a single UCD server endpoint
+ *
+ */
+public class EndpointHealth {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    // upper bounds in milliseconds of the latency histogram buckets, the last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS = {50, 100, 250, 500, 1000, 2500};
+
+    // consecutive failed probes after which the endpoint is considered down
+    private static final int FAILURES_BEFORE_DOWN = 3;
+
+    // weight of the newest sample in the moving average latency
+    private static final double SMOOTHING = 0.3;
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String url;
+    final private long[] histogram = new long[BUCKET_BOUNDS.length + 1];
+    private double averageLatency = -1;
+    private int consecutiveFailures;
+    private boolean down;
+    private String lastError;
+
+    public EndpointHealth(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Record a successful probe, which brings a down endpoint back up
+     *
+     * @param latency The probe round trip time in milliseconds
+     */
+    public synchronized void recordSuccess(long latency) {
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram[bucket]++;
+
+        if (averageLatency < 0) {
+            averageLatency = latency;
+        }
+        else {
+            averageLatency = SMOOTHING * latency + (1 - SMOOTHING) * averageLatency;
+        }
+
+        consecutiveFailures = 0;
+        down = false;
+        lastError = null;
+    }
+
+    /**
+     * Record a failed probe, marking the endpoint down after repeated failures
+     *
+     * @param error The failure message
+     */
+    public synchronized void recordFailure(String error) {
+        consecutiveFailures++;
+        lastError = error;
+        if (consecutiveFailures >= FAILURES_BEFORE_DOWN) {
+            down = true;
+        }
+    }
+
+    public synchronized boolean isDown() {
+        return down;
+    }
+
+    /**
+     * @return The moving average latency in milliseconds or -1 if never probed successfully
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    public synchronized String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return A copy of the latency histogram counts, one per bucket
+     */
+    public synchronized long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * @return A readable summary of the latency histogram
+     */
+    public synchronized String getHistogramSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < histogram.length; i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            if (i < BUCKET_BOUNDS.length) {
+                summary.append("<=").append(BUCKET_BOUNDS[i]).append("ms: ");
+            }
+            else {
+                summary.append(">").append(BUCKET_BOUNDS[i - 1]).append("ms: ");
+            }
+            summary.append(histogram[i]);
+        }
+        return summary.toString();
+    }
+}
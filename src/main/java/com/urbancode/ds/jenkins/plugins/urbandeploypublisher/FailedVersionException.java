@@ -0,0 +1,35 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+import java.util.UUID;
+
+/**
+ * This exception aborts a publish that created a component version but failed to upload its files.
+ * The incomplete version is left for the {@link VersionCleanupQueue} to delete.
+ *
+ */
+public class FailedVersionException extends AbortException {
+
+    private static final long serialVersionUID = 4128503781469286163L;
+
+    final private UUID versionId;
+
+    public FailedVersionException(String message, UUID versionId) {
+        super(message);
+        this.versionId = versionId;
+    }
+
+    /**
+     * @return The id of the incomplete component version
+     */
+    public UUID getVersionId() {
+        return versionId;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * This class persists the digest of every fingerprinted file of a workspace together with the
+ * size and modification time it had when hashed, so unchanged files are not hashed again.
+ * The index is stored in a compact binary file in the temporary directory of the node. The file is
+ * read and written with a single channel transfer, it is not memory mapped because a mapped file
+ * cannot be replaced on Windows until the mapping is garbage collected.
+ *
+ */
+public class FingerprintIndex {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final int MAGIC = 0x55434446; // "UCDF"
+    private static final int FORMAT_VERSION = 1;
+    private static final String INDEX_DIR = "ucd-fingerprints";
+
+    /**
+     * Get the index file of a working directory
+     *
+     * @param workDir The working directory whose files are fingerprinted
+     * @return The index file, named after a hash of the absolute working directory path
+     */
+    public static File getIndexFile(File workDir) {
+        File indexDir = new File(System.getProperty("java.io.tmpdir"), INDEX_DIR);
+        return new File(indexDir, DigestUtils.shaHex(workDir.getAbsolutePath()) + ".idx");
+    }
+
+    /**
+     * Load the index of a working directory. A missing or unreadable index file yields an empty index.
+     *
+     * @param workDir The working directory whose files are fingerprinted
+     * @return The index
+     */
+    public static FingerprintIndex load(File workDir) {
+        FingerprintIndex index = new FingerprintIndex(getIndexFile(workDir));
+
+        if (index.file.isFile()) {
+            try {
+                index.read();
+            }
+            catch (IOException ex) {
+                // the index is only a cache, everything is hashed again
+                index.entries.clear();
+            }
+        }
+
+        return index;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private File file;
+    final private Map<String, Entry> entries = new HashMap<String, Entry>();
+    private int missCount;
+
+    private FingerprintIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Get the recorded digest of a file if its size and modification time are unchanged
+     *
+     * @param path The relative path of the file
+     * @param size The current size of the file
+     * @param lastModified The current modification time of the file
+     * @return The digest or null if the file must be hashed
+     */
+    public synchronized byte[] getDigest(String path, long size, long lastModified) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            return entry.digest;
+        }
+        missCount++;
+        return null;
+    }
+
+    /**
+     * Get the number of lookups that found no usable digest
+     *
+     * @return The number of files that had to be hashed
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Record the digest of a file
+     *
+     * @param path The relative path of the file
+     * @param size The size of the file when hashed
+     * @param lastModified The modification time of the file when hashed
+     * @param digest The digest
+     */
+    public synchronized void putDigest(String path, long size, long lastModified, byte[] digest) {
+        entries.put(path, new Entry(size, lastModified, digest));
+    }
+
+    /**
+     * Remove the entries of all files not in the given set
+     *
+     * @param paths The relative paths to keep
+     */
+    public synchronized void retain(String[] paths) {
+        Map<String, Entry> retained = new HashMap<String, Entry>();
+        for (String path : paths) {
+            Entry entry = entries.get(path);
+            if (entry != null) {
+                retained.put(path, entry);
+            }
+        }
+        entries.clear();
+        entries.putAll(retained);
+    }
+
+    /**
+     * Write the index to its file
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent.getAbsolutePath());
+        }
+
+        Map<String, byte[]> encodedPaths = new HashMap<String, byte[]>();
+        int length = 12;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            byte[] encodedPath = entry.getKey().getBytes("UTF-8");
+            encodedPaths.put(entry.getKey(), encodedPath);
+            length += 4 + encodedPath.length + 8 + 8 + 2 + entry.getValue().digest.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC);
+        buffer.putInt(FORMAT_VERSION);
+        buffer.putInt(entries.size());
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            byte[] encodedPath = encodedPaths.get(entry.getKey());
+            buffer.putInt(encodedPath.length);
+            buffer.put(encodedPath);
+            buffer.putLong(entry.getValue().size);
+            buffer.putLong(entry.getValue().lastModified);
+            buffer.putShort((short) entry.getValue().digest.length);
+            buffer.put(entry.getValue().digest);
+        }
+        buffer.flip();
+
+        // write a complete new file first so an interrupted save never leaves a truncated index, it has a
+        // unique name because concurrent builds of the same workspace path may save at the same time
+        File tempFile = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            FileChannel out = new FileOutputStream(tempFile).getChannel();
+            try {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            finally {
+                out.close();
+            }
+
+            // the rename replaces the index atomically, except on Windows where the old index must go first
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file))) {
+                throw new IOException("Could not replace index file " + file.getAbsolutePath());
+            }
+        }
+        finally {
+            if (tempFile.exists()) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private void read() throws IOException {
+        FileChannel in = new FileInputStream(file).getChannel();
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+            while (buffer.hasRemaining() && in.read(buffer) != -1) {
+                // read the whole index
+            }
+            buffer.flip();
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported index file " + file.getAbsolutePath());
+            }
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] encodedPath = new byte[buffer.getInt()];
+                buffer.get(encodedPath);
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                byte[] digest = new byte[buffer.getShort()];
+                buffer.get(digest);
+                entries.put(new String(encodedPath, "UTF-8"), new Entry(size, lastModified, digest));
+            }
+        }
+        catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated index file " + file.getAbsolutePath());
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IOException("Corrupt index file " + file.getAbsolutePath());
+        }
+        catch (NegativeArraySizeException ex) {
+            throw new IOException("Corrupt index file " + file.getAbsolutePath());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static class Entry {
+        final private long size;
+        final private long lastModified;
+        final private byte[] digest;
+
+        private Entry(long size, long lastModified, byte[] digest) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.digest = digest;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * This class pulls selected fields out of UCD JSON responses with a streaming parser. A response
+ * is never held as a tree: nested objects and arrays are skipped unread and only the requested
+ * top level values of one element are kept at a time.
+ *
+ */
+public class JsonStream {
+
+    // thread safe once configured, parsers are created per response
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Receives the selected fields of the elements of an array
+     */
+    public interface ElementHandler {
+
+        /**
+         * @param fields The requested fields present in the element, as text
+         * @return Whether to continue with the next element
+         * @throws IOException
+         */
+        boolean element(Map<String, String> fields) throws IOException;
+    }
+
+    /**
+     * Receives response bodies as they arrive
+     */
+    public interface ResponseHandler {
+
+        /**
+         * @param index The position of the response among the requested uris
+         * @param parser A parser reading the response body, closed by the caller
+         * @throws IOException
+         */
+        void response(int index, JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Pass a response body to a handler, parsing it while it is read from the stream
+     *
+     * @param in A response body
+     * @param index The position of the response among the requested uris
+     * @param handler The handler of the response
+     * @throws IOException
+     */
+    public static void read(InputStream in, int index, ResponseHandler handler) throws IOException {
+        JsonParser parser = parse(in);
+        try {
+            handler.response(index, parser);
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * @param handler The handler receiving the requested fields of every element
+     * @param fields The names of the top level fields to read from each element
+     * @return A response handler reading an array of objects from every response
+     */
+    public static ResponseHandler arrayReader(final ElementHandler handler, final String... fields) {
+        return new ResponseHandler() {
+            @Override
+            public void response(int index, JsonParser parser) throws IOException {
+                readArray(parser, handler, fields);
+            }
+        };
+    }
+
+    /**
+     * @param fields The names of the top level fields to read
+     * @param values The map receiving the requested fields of the response object
+     * @return A response handler reading an object from the response
+     */
+    public static ResponseHandler objectReader(final Map<String, String> values, final String... fields) {
+        return new ResponseHandler() {
+            @Override
+            public void response(int index, JsonParser parser) throws IOException {
+                values.putAll(readObject(parser, fields));
+            }
+        };
+    }
+
+    /**
+     * @param in A response body
+     * @return A parser reading the body as it arrives
+     * @throws IOException
+     */
+    public static JsonParser parse(InputStream in) throws IOException {
+        return FACTORY.createParser(in);
+    }
+
+    /**
+     * @param body A response body already in memory
+     * @return A parser reading the body
+     * @throws IOException
+     */
+    public static JsonParser parse(String body) throws IOException {
+        return FACTORY.createParser(body);
+    }
+
+    /**
+     * Read an array of objects, passing the requested fields of each object to the handler
+     *
+     * @param parser A parser positioned before the array
+     * @param handler The handler, which may stop reading early
+     * @param fields The names of the top level fields to read from each object
+     * @throws IOException if the response is not an array of objects
+     */
+    public static void readArray(JsonParser parser, ElementHandler handler, String... fields) throws IOException {
+        Set<String> wanted = new HashSet<String>(Arrays.asList(fields));
+
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected a JSON array but found " + parser.getCurrentToken());
+        }
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("Unexpected end of JSON array");
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            if (!handler.element(readFields(parser, wanted))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read the requested fields of an object
+     *
+     * @param parser A parser positioned before the object
+     * @param fields The names of the top level fields to read
+     * @return The requested fields present in the object, as text
+     * @throws IOException if the response is not an object
+     */
+    public static Map<String, String> readObject(JsonParser parser, String... fields) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a JSON object but found " + parser.getCurrentToken());
+        }
+        return readFields(parser, new HashSet<String>(Arrays.asList(fields)));
+    }
+
+    private static Map<String, String> readFields(JsonParser parser, Set<String> wanted) throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_OBJECT) {
+            if (token == null) {
+                throw new IOException("Unexpected end of JSON object");
+            }
+
+            String name = parser.getCurrentName();
+            token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            }
+            else if (token != JsonToken.VALUE_NULL && wanted.contains(name)) {
+                values.put(name, parser.getText());
+            }
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+import hudson.model.BuildListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class validates the configuration of a publish against the UCD server before any
+ * file is uploaded. All checks run concurrently and every failure is reported at once.
+ *
+ */
+public class PreflightCheck {
+
+    final private RestClientHelper clientHelper;
+    final private Map<String, Callable<Void>> checks = new LinkedHashMap<String, Callable<Void>>();
+
+    public PreflightCheck(RestClientHelper clientHelper) {
+        this.clientHelper = clientHelper;
+    }
+
+    /**
+     * Check that the credentials are accepted
+     *
+     * @return This check
+     */
+    public PreflightCheck credentials() {
+        checks.put("credentials", new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                clientHelper.checkCredentials();
+                return null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Check that a component exists
+     *
+     * @param component
+     * @return This check
+     */
+    public PreflightCheck component(final String component) {
+        checks.put("component " + component, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                clientHelper.checkComponentExists(component);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Check that a version name is not taken yet
+     *
+     * @param component
+     * @param version The version name, which must not exist yet
+     * @return This check
+     */
+    public PreflightCheck newVersion(final String component, final String version) {
+        checks.put("version " + version, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                if (clientHelper.versionExists(component, version)) {
+                    throw new AbortException("Version '" + version + "' already exists in component '"
+                            + component + "'");
+                }
+                return null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Check that an existing version can be deployed
+     *
+     * @param component
+     * @param version The version name, which must exist
+     * @return This check
+     */
+    public PreflightCheck existingVersion(final String component, final String version) {
+        checks.put("version " + version, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                if (!clientHelper.versionExists(component, version)) {
+                    throw new AbortException("Version '" + version + "' does not exist in component '"
+                            + component + "'");
+                }
+                return null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Check that an application process can be requested
+     *
+     * @param app
+     * @param env
+     * @param proc
+     * @param reqProps The request properties, which must fill all required properties
+     * @return This check
+     */
+    public PreflightCheck deployment(final String app, final String env, final String proc, final String reqProps) {
+        checks.put("application " + app, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                clientHelper.checkApplicationExists(app);
+                return null;
+            }
+        });
+        checks.put("environment " + env, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                clientHelper.checkEnvironmentExists(app, env);
+                return null;
+            }
+        });
+        checks.put("process " + proc, new Callable<Void>() {
+            @Override
+            public Void call() throws AbortException {
+                clientHelper.checkApplicationProcessExists(app, proc);
+                clientHelper.checkRequestProperties(app, proc, reqProps);
+                return null;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Run all checks concurrently
+     *
+     * @param executor The executor to run the checks on
+     * @param listener
+     * @throws AbortException listing every failed check
+     * @throws InterruptedException
+     */
+    public void run(ExecutorService executor, BuildListener listener) throws AbortException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        Map<String, Future<Void>> results = new LinkedHashMap<String, Future<Void>>();
+        for (Map.Entry<String, Callable<Void>> check : checks.entrySet()) {
+            results.put(check.getKey(), executor.submit(check.getValue()));
+        }
+
+        List<String> failures = new ArrayList<String>();
+        try {
+            for (Map.Entry<String, Future<Void>> result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                }
+                catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    failures.add(cause.getMessage());
+                }
+            }
+        }
+        finally {
+            for (Future<Void> result : results.values()) {
+                result.cancel(true);
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            for (String failure : failures) {
+                listener.error(failure);
+            }
+            throw new AbortException("Validation before upload failed with " + failures.size() + " error(s)");
+        }
+
+        listener.getLogger().println("Validated " + checks.size() + " checks in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+    }
+}
@@ -7,12 +7,30 @@
 package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
 
 import hudson.AbortException;
+import hudson.FilePath;
 import hudson.model.BuildListener;
 import hudson.remoting.Callable;
 import hudson.remoting.VirtualChannel;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 import org.jenkinsci.remoting.RoleChecker;
 
@@ -20,13 +38,19 @@ import org.jenkinsci.remoting.RoleChecker;
  * This class is called on a channel to publish artifacts to a component version
  *
  */
-public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
+public class PublishArtifactsCallable implements Callable<PublishResult, Exception> {
 
     //**********************************************************************************************
     // CLASS
     //**********************************************************************************************
     private static final long serialVersionUID = 34598734957L;
 
+    // number of most recent versions searched for an identical fingerprint
+    private static final int FINGERPRINT_SEARCH_DEPTH = 10;
+
+    // minimum milliseconds between upload summary lines
+    private static final long SUMMARY_INTERVAL = 30 * 1000L;
+
     //**********************************************************************************************
     // INSTANCE
     //**********************************************************************************************
@@ -38,8 +62,19 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
     final private String component;
     final private String version;
     final private String description;
+    final private boolean reuseIdenticalVersion;
+    final private boolean uploadAsArchive;
+    final private boolean compressArchive;
+    final private boolean extractArchive;
+    final private FilePath fileListing;
+    final private UploadProgressReporter progressReporter;
+    final private long stallTimeout;
     final private BuildListener listener;
-
+    private UUID earlyVersionId;
+    private Map<String, String> earlyUploaded;
+    final private Map<String, RestClientHelper> additionalSites = new LinkedHashMap<String, RestClientHelper>();
+    // the profile name of the additional site this copy publishes to, null for the primary site
+    private String additionalSiteName;
 
     /**
      * Construct a Callable task
@@ -51,6 +86,14 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
      * @param component
      * @param version
      * @param description
+     * @param reuseIdenticalVersion reuse a recent version with identical content instead of uploading
+     * @param uploadAsArchive bundle the matched files into a single tar archive before uploading
+     * @param compressArchive gzip compress the archive
+     * @param extractArchive mark the archive for extraction by the deployment process
+     * @param fileListing the file to write the compressed listing of uploaded files to, which
+     *            replaces the per-file output with periodic summaries, or null to log every file
+     * @param progressReporter the reporter to send upload progress samples to, or null
+     * @param stallTimeout milliseconds without upload progress before warning, or 0 to never warn
      * @param listener object to receive events that happen during a build
      */
     public PublishArtifactsCallable(
@@ -62,6 +105,13 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
         String component,
         String version,
         String description,
+        boolean reuseIdenticalVersion,
+        boolean uploadAsArchive,
+        boolean compressArchive,
+        boolean extractArchive,
+        FilePath fileListing,
+        UploadProgressReporter progressReporter,
+        long stallTimeout,
         BuildListener listener)
     {
         if (fileIncludePatterns == null) {
@@ -79,17 +129,78 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
         this.component = component;
         this.version = version;
         this.description = description;
+        this.reuseIdenticalVersion = reuseIdenticalVersion;
+        this.uploadAsArchive = uploadAsArchive;
+        this.compressArchive = compressArchive;
+        this.extractArchive = extractArchive;
+        this.fileListing = fileListing;
+        this.progressReporter = progressReporter;
+        this.stallTimeout = stallTimeout;
         this.listener = listener;
     }
 
+    /**
+     * Construct the task publishing the same content to an additional site, quietly and
+     * without reporting progress
+     * @param primary the task publishing to the primary site
+     * @param siteName the profile name of the additional site
+     * @param clientHelper the helper object to run UCD rest commands on the additional site
+     */
+    private PublishArtifactsCallable(PublishArtifactsCallable primary, String siteName, RestClientHelper clientHelper) {
+        this(
+            clientHelper,
+            primary.baseDir,
+            primary.dirOffset,
+            primary.fileIncludePatterns,
+            primary.fileExcludePatterns,
+            primary.component,
+            primary.version,
+            primary.description,
+            primary.reuseIdenticalVersion,
+            primary.uploadAsArchive,
+            primary.compressArchive,
+            primary.extractArchive,
+            null,
+            null,
+            0,
+            primary.listener);
+        this.additionalSiteName = siteName;
+    }
+
+    /**
+     * Publish the same content to another site. The files are scanned and fingerprinted once
+     * and uploaded to all sites concurrently, and every site succeeds or fails on its own.
+     * @param siteName the profile name of the site
+     * @param siteClientHelper the helper object to run UCD rest commands on the site
+     */
+    public void addSite(String siteName, RestClientHelper siteClientHelper) {
+        additionalSites.put(siteName, siteClientHelper);
+    }
+
+    /**
+     * Continue a version that was created and partially uploaded while the build was running.
+     * Only files that were not uploaded yet are uploaded. If an uploaded file was changed or removed since,
+     * the version is deleted and published again with all files.
+     * @param versionId the id of the version created during the build
+     * @param uploaded the file key of every file uploaded during the build, by relative path
+     */
+    public void resumeEarlyUpload(UUID versionId, Map<String, String> uploaded) {
+        this.earlyVersionId = versionId;
+        this.earlyUploaded = uploaded;
+    }
+
     /**
      * Call task on remote node, otherwise call would default to master node
      * @param channel the name of the node to call a task on
+     * @return The outcome of the publish
      * @throws AbortException
      */
-    public void callOnChannel(VirtualChannel channel) throws AbortException {
+    public PublishResult callOnChannel(VirtualChannel channel) throws AbortException {
         try {
-            channel.call(this);
+            return channel.call(this);
+        }
+        catch (FailedVersionException ex) {
+            throw ex;
         }
         catch (Exception ex) {
             throw new AbortException("Failed to run build on channel: "
@@ -99,11 +210,130 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
 
     /**
      * Run this callable task on the defined channel
-     * @return A boolean to represent the task success
+     * @return The outcome of the publish with the spans recorded on this node. A failure of the
+     *         primary site is thrown unless additional sites were published to, in which case
+     *         it is returned with their outcomes.
      * @throws AbortException
      */
     @Override
-    public Boolean call() throws AbortException {
+    public PublishResult call() throws AbortException {
+        Tracer tracer = clientHelper.getTracer();
+        int mark = tracer.mark();
+        TraceSpan span = tracer.start("publishArtifacts")
+                .attribute("component", component).attribute("version", version);
+        String publishedVersion = null;
+        AbortException failure = null;
+        List<PublishResult.SiteResult> siteResults = new ArrayList<PublishResult.SiteResult>();
+        ExecutorService executor = null;
+        Content content = null;
+
+        try {
+            content = prepare(tracer, span);
+
+            // the sites upload concurrently, each upload of the rest client reads the files itself
+            Map<String, Future<String>> sitePublishes = new LinkedHashMap<String, Future<String>>();
+            if (!additionalSites.isEmpty()) {
+                executor = Executors.newFixedThreadPool(additionalSites.size());
+                for (Map.Entry<String, RestClientHelper> site : additionalSites.entrySet()) {
+                    final PublishArtifactsCallable sitePublish =
+                            new PublishArtifactsCallable(this, site.getKey(), site.getValue());
+                    final Content siteContent = content;
+                    sitePublishes.put(site.getKey(), executor.submit(new java.util.concurrent.Callable<String>() {
+                        @Override
+                        public String call() throws AbortException {
+                            return sitePublish.publishToSite(siteContent);
+                        }
+                    }));
+                }
+            }
+
+            try {
+                publishedVersion = publish(tracer, span, content);
+            }
+            catch (AbortException ex) {
+                if (sitePublishes.isEmpty()) {
+                    throw ex;
+                }
+                span.fail(ex);
+                failure = ex;
+            }
+
+            for (Map.Entry<String, Future<String>> sitePublish : sitePublishes.entrySet()) {
+                siteResults.add(awaitSite(sitePublish.getKey(), sitePublish.getValue()));
+            }
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            if (content != null) {
+                content.delete();
+            }
+        }
+
+        return new PublishResult(publishedVersion, tracer.getSpansSince(mark), siteResults, failure);
+    }
+
+    /**
+     * Publish the prepared content to the additional site of this copy
+     * @param content the content prepared by the task of the primary site
+     * @return The name of the version holding the artifacts
+     * @throws AbortException
+     */
+    private String publishToSite(Content content) throws AbortException {
+        Tracer tracer = clientHelper.getTracer();
+        TraceSpan span = tracer.start("publishArtifacts").attribute("site", additionalSiteName)
+                .attribute("component", component).attribute("version", version);
+        try {
+            return publish(tracer, span, content);
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Wait for the publish to an additional site
+     * @param siteName the profile name of the site
+     * @param publish the running publish
+     * @return The outcome of the publish
+     */
+    private PublishResult.SiteResult awaitSite(String siteName, Future<String> publish) {
+        try {
+            return new PublishResult.SiteResult(siteName, publish.get(), null, null);
+        }
+        catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            UUID failedVersionId = null;
+            if (cause instanceof FailedVersionException) {
+                failedVersionId = ((FailedVersionException) cause).getVersionId();
+            }
+            return new PublishResult.SiteResult(siteName, null, failedVersionId, cause.getMessage());
+        }
+        catch (InterruptedException ex) {
+            publish.cancel(true);
+            Thread.currentThread().interrupt();
+            return new PublishResult.SiteResult(siteName, null, null, "Interrupted while publishing");
+        }
+    }
+
+    /**
+     * Scan and fingerprint the artifacts once for all sites
+     * @param tracer the tracer recording the stages
+     * @param publishSpan the span of the whole publish
+     * @return The content to publish
+     * @throws AbortException
+     */
+    private Content prepare(Tracer tracer, TraceSpan publishSpan) throws AbortException {
         File workDir = new File(baseDir);
 
         if (!workDir.exists()) {
@@ -115,43 +345,442 @@ public class PublishArtifactsCallable implements Callable<Boolean, Exception> {
             workDir = new File(workDir, dirOffset.trim());
         }
 
-        listener.getLogger().println("Creating new version: " + version + " on component: " + component);
+        Content content = new Content(workDir);
+
+        // the listing and the progress totals need the matched files up front
+        boolean scanFiles = fileListing != null || progressReporter != null;
+
+        boolean resumeUpload = earlyVersionId != null;
+
+        if (reuseIdenticalVersion || uploadAsArchive || scanFiles || resumeUpload
+                || !additionalSites.isEmpty()) {
+            TraceSpan span = tracer.start("scan");
+            try {
+                content.paths = ArtifactScanner.scan(
+                        workDir,
+                        RestClientHelper.splitFiles(fileIncludePatterns),
+                        RestClientHelper.splitFiles(fileExcludePatterns));
+
+                content.sizes = new long[content.paths.length];
+                long bytes = 0;
+                for (int i = 0; i < content.paths.length; i++) {
+                    content.sizes[i] = new File(workDir, content.paths[i]).length();
+                    bytes += content.sizes[i];
+                }
+                span.attribute("files", content.paths.length).attribute("bytes", bytes);
+                publishSpan.attribute("files", content.paths.length).attribute("bytes", bytes);
+            }
+            finally {
+                tracer.end(span);
+            }
+        }
+
+        if (reuseIdenticalVersion && !resumeUpload) {
+            String[] paths = content.paths;
+            TraceSpan span = tracer.start("fingerprint").attribute("files", paths.length);
+            FingerprintIndex index = FingerprintIndex.load(workDir);
+            try {
+                content.fingerprint = VersionFingerprint.compute(workDir, paths, index);
+                span.attribute("hashedFiles", index.getMissCount());
+            }
+            catch (IOException ex) {
+                span.fail(ex);
+                throw new AbortException("Failed to compute content fingerprint of '" + workDir.getPath()
+                        + "' : " + ex.getMessage());
+            }
+            finally {
+                tracer.end(span);
+            }
+
+            listener.getLogger().println("Content fingerprint of " + paths.length + " files ("
+                    + index.getMissCount() + " changed files hashed): " + content.fingerprint);
+
+            try {
+                index.save();
+            }
+            catch (IOException ex) {
+                listener.getLogger().println("[Warning] Could not save fingerprint index '"
+                        + FingerprintIndex.getIndexFile(workDir).getAbsolutePath() + "' : " + ex.getMessage());
+            }
+        }
+
+        return content;
+    }
 
-        UUID versionId = clientHelper.createComponentVersion(version, component, description);
+    /**
+     * Create the version and upload the artifacts
+     * @param tracer the tracer recording the publish stages
+     * @param publishSpan the span of the whole publish
+     * @param content the content prepared once for all sites
+     * @return The name of the version holding the artifacts, which differs from the requested
+     *         version when an identical existing version was reused
+     * @throws AbortException
+     */
+    private String publish(Tracer tracer, TraceSpan publishSpan, Content content) throws AbortException {
+        File workDir = content.workDir;
+        String[] paths = content.paths;
+        long[] sizes = content.sizes;
+        String fingerprint = content.fingerprint;
+
+        boolean resumeUpload = earlyVersionId != null;
 
-        listener.getLogger().println("Successfully created new component version.");
+        if (fingerprint != null) {
+            String existingVersion = clientHelper.findVersionWithProperty(
+                    component,
+                    VersionFingerprint.PROPERTY_NAME,
+                    fingerprint,
+                    FINGERPRINT_SEARCH_DEPTH);
 
-        listener.getLogger().println("Working Directory: " + workDir.getPath());
-        listener.getLogger().println("Includes: " + fileIncludePatterns);
-        listener.getLogger().println("Excludes: " + fileExcludePatterns);
+            if (existingVersion != null) {
+                publishSpan.attribute("reusedVersion", existingVersion);
+                log("Version '" + existingVersion + "' of component " + component
+                        + " has identical content. Skipping creation of version '" + version
+                        + "' and reusing the existing version.");
+                return existingVersion;
+            }
 
-        listener.getLogger().println("Adding files to component version.");
+            log("No recent version has identical content. Publishing a new version.");
+        }
+
+        if (resumeUpload) {
+            List<String> stale = getStaleEarlyUploads(workDir, paths);
+            if (!stale.isEmpty()) {
+                // a version cannot lose or replace files, so it is published again from scratch
+                log(stale.size() + " files uploaded during the build were changed or removed since, such as "
+                        + stale.get(0) + ". Deleting the version created during the build and uploading all files.");
+                discardEarlyUpload();
+                resumeUpload = false;
+            }
+        }
+
+        UUID versionId;
+        if (resumeUpload) {
+            versionId = earlyVersionId;
+            log("Completing version: " + version + " on component: " + component
+                    + " created during the build.");
+        }
+        else {
+            log("Creating new version: " + version + " on component: " + component);
+
+            versionId = clientHelper.createComponentVersion(version, component, description);
+
+            log("Successfully created new component version.");
+        }
+
+        log("Working Directory: " + workDir.getPath());
+        log("Includes: " + fileIncludePatterns);
+        log("Excludes: " + fileExcludePatterns);
+
+        log("Adding files to component version.");
+
+        // the listing is kept once, for the primary site
+        if (fileListing != null && additionalSiteName == null && paths != null) {
+            writeFileListing(paths, sizes);
+        }
 
         try {
-            clientHelper.uploadVersionFiles(
-                    workDir,
+            if (resumeUpload) {
+                uploadRemaining(workDir, paths, sizes);
+            }
+            else if (uploadAsArchive) {
+                uploadArchive(tracer, content);
+            }
+            else {
+                uploadFiles(
+                        workDir,
+                        RestClientHelper.splitFiles(fileIncludePatterns),
+                        RestClientHelper.splitFiles(fileExcludePatterns),
+                        sizes);
+            }
+
+            log("Successfully uploaded files to version.");
+
+        }
+        catch (AbortException ex) {
+            // the controller queues the deletion so the failing build does not wait for it
+            throw new FailedVersionException(ex.getMessage(), versionId);
+        }
+
+        StringBuilder versionProperties = new StringBuilder();
+        if (fingerprint != null) {
+            versionProperties.append(VersionFingerprint.PROPERTY_NAME).append("=").append(fingerprint).append("\n");
+        }
+        if (uploadAsArchive) {
+            versionProperties.append(VersionArchive.ARCHIVE_PROPERTY).append("=")
+                    .append(VersionArchive.getArchiveName(compressArchive)).append("\n");
+            versionProperties.append(VersionArchive.EXTRACT_PROPERTY).append("=").append(extractArchive).append("\n");
+        }
+        if (versionProperties.length() > 0) {
+            clientHelper.setComponentVersionProperties(
                     component,
                     version,
-                    fileIncludePatterns,
-                    fileExcludePatterns);
+                    versionProperties.toString().trim(),
+                    listener);
+        }
+
+        return version;
+    }
+
+    /**
+     * Log a message, prefixed with the site name when publishing to an additional site
+     * @param message
+     */
+    private void log(String message) {
+        if (additionalSiteName != null) {
+            message = "[" + additionalSiteName + "] " + message;
+        }
+        listener.getLogger().println(message);
+    }
+
+    /**
+     * Upload files in a single upload. The primary site logs every file, or a periodic summary
+     * when the log is summarized or progress is reported. An additional site logs only the outcome.
+     * @param workDir the directory the patterns are relative to
+     * @param includes the include patterns of the upload
+     * @param excludes the exclude patterns of the upload
+     * @param sizes the sizes of the files the patterns match, or null if they were not scanned
+     * @throws AbortException
+     */
+    private void uploadFiles(File workDir, String[] includes, String[] excludes, long[] sizes)
+    throws AbortException {
+        if (additionalSiteName != null) {
+            clientHelper.uploadVersionFiles(workDir, component, version, includes, excludes, false);
+        }
+        else if (sizes != null && (fileListing != null || progressReporter != null)) {
+            uploadMonitored(workDir, includes, excludes, sizes);
+        }
+        else {
+            clientHelper.uploadVersionFiles(workDir, component, version, includes, excludes, true);
+        }
+    }
 
-            listener.getLogger().println("Successfully uploaded files to version.");
+    /**
+     * Upload the matched files in a single upload without per-file output, while a background
+     * monitor logs a progress summary every {@link #SUMMARY_INTERVAL}, reports progress samples
+     * and warns about stalls. The progress counts the bytes of the upload as they are sent.
+     * @param workDir the directory the patterns are relative to
+     * @param includes the include patterns of the upload
+     * @param excludes the exclude patterns of the upload
+     * @param sizes the sizes of the files the patterns match
+     * @throws AbortException
+     */
+    private void uploadMonitored(File workDir, String[] includes, String[] excludes, long[] sizes)
+    throws AbortException {
+        if (sizes.length == 0) {
+            throw new AbortException("Base artifact directory " + workDir.getAbsolutePath()
+                    + " does not contain any files to upload. Please place files.");
+        }
 
+        long totalBytes = 0;
+        for (long size : sizes) {
+            totalBytes += size;
+        }
+
+        UploadProgress progress = new UploadProgress(sizes.length, totalBytes);
+        UploadProgressMonitor monitor = new UploadProgressMonitor(
+                progress,
+                listener.getLogger(),
+                progressReporter,
+                SUMMARY_INTERVAL,
+                stallTimeout);
+        monitor.start();
+
+        try {
+            clientHelper.uploadVersionFiles(workDir, component, version, includes, excludes, false, progress);
+            progress.complete();
+        }
+        finally {
+            monitor.stop();
+        }
+    }
+
+    /**
+     * List the files uploaded during the build that no longer match or whose content changed since
+     * @param workDir the directory the paths are relative to
+     * @param paths the relative paths of the matched files
+     * @return The relative paths of the stale uploads
+     */
+    private List<String> getStaleEarlyUploads(File workDir, String[] paths) {
+        Set<String> matched = new HashSet<String>(Arrays.asList(paths));
+        List<String> stale = new ArrayList<String>();
+        for (Map.Entry<String, String> upload : earlyUploaded.entrySet()) {
+            String path = upload.getKey();
+            if (!matched.contains(path)
+                    || !upload.getValue().equals(EarlyUploadWatcher.getFileKey(new File(workDir, path)))) {
+                stale.add(path);
+            }
+        }
+        Collections.sort(stale);
+        return stale;
+    }
+
+    /**
+     * Delete the version created during the build so it can be created again with the final files
+     * @throws FailedVersionException if the version could not be deleted, so it is queued for deletion
+     */
+    private void discardEarlyUpload() throws FailedVersionException {
+        try {
+            clientHelper.deleteComponentVersion(earlyVersionId);
         }
         catch (AbortException ex) {
+            throw new FailedVersionException("Files uploaded during the build were changed or removed and the "
+                    + "version could not be deleted to publish it again : " + ex.getMessage(), earlyVersionId);
+        }
+        earlyVersionId = null;
+        earlyUploaded = null;
+    }
+
+    /**
+     * Upload the matched files that were not uploaded during the build
+     * @param workDir the directory the paths are relative to
+     * @param paths the relative paths of the matched files
+     * @param sizes the sizes of the matched files
+     * @throws AbortException
+     */
+    private void uploadRemaining(File workDir, String[] paths, long[] sizes) throws AbortException {
+        if (paths.length == 0) {
+            throw new AbortException("Base artifact directory " + workDir.getAbsolutePath()
+                    + " does not contain any files to upload. Please place files.");
+        }
+
+        List<String> remaining = new ArrayList<String>();
+        List<Long> remainingSizes = new ArrayList<Long>();
+        // the uploads of the build are current, so every path not among them is still missing
+        for (int i = 0; i < paths.length; i++) {
+            if (!earlyUploaded.containsKey(paths[i])) {
+                remaining.add(paths[i]);
+                remainingSizes.add(sizes[i]);
+            }
+        }
+
+        if (remaining.isEmpty()) {
+            listener.getLogger().println("All " + paths.length + " files were uploaded during the build.");
+            return;
+        }
+
+        listener.getLogger().println((paths.length - remaining.size()) + " of " + paths.length
+                + " files were uploaded during the build, uploading the remaining " + remaining.size() + " files.");
+
+        String[] remainingPaths = remaining.toArray(new String[remaining.size()]);
+        long[] remainingSizeArray = new long[remainingSizes.size()];
+        for (int i = 0; i < remainingSizeArray.length; i++) {
+            remainingSizeArray[i] = remainingSizes.get(i);
+        }
+        String[][] patterns = ArtifactScanner.literalPatterns(workDir, remainingPaths);
+        uploadFiles(workDir, patterns[0], patterns[1], remainingSizeArray);
+    }
+
+    /**
+     * Write the size and relative path of every matched file to the gzip compressed listing
+     * @param paths the relative paths of the matched files
+     * @param sizes the sizes of the matched files
+     */
+    private void writeFileListing(String[] paths, long[] sizes) {
+        try {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(fileListing.write()), "UTF-8"));
             try {
-                listener.getLogger().println("Deleting component version '" + versionId
-                        + "' due to failed artifact upload.");
-                clientHelper.deleteComponentVersion(versionId);
+                for (int i = 0; i < paths.length; i++) {
+                    writer.write(sizes[i] + "\t" + paths[i] + "\n");
+                }
             }
-            catch (AbortException e) {
-                listener.error("Failed to delete component version :" + e.getMessage());
+            finally {
+                writer.close();
             }
+            listener.getLogger().println("Wrote listing of " + paths.length + " files to " + fileListing.getName());
+        }
+        catch (Exception ex) {
+            // the listing is informational, the upload continues without it
+            listener.getLogger().println("[Warning] Failed to write file listing: " + ex.getMessage());
+        }
+    }
 
-            throw ex;
+    /**
+     * Bundle the matched files into a single archive in a temporary directory and upload it.
+     * The archive is created once and uploaded to every site.
+     * @param tracer the tracer recording the archive stage
+     * @param content the scanned content
+     * @throws AbortException
+     */
+    private void uploadArchive(Tracer tracer, Content content) throws AbortException {
+        if (content.paths.length == 0) {
+            throw new AbortException("Base artifact directory " + content.workDir.getAbsolutePath()
+                    + " does not contain any files to upload. Please place files.");
+        }
+
+        File archive;
+        try {
+            archive = content.getArchive(tracer);
         }
+        catch (IOException ex) {
+            throw new AbortException("Failed to create archive of '" + content.workDir.getPath() + "' : "
+                    + ex.getMessage());
+        }
+
+        clientHelper.uploadVersionFiles(archive.getParentFile(), component, version, archive.getName(), "");
+    }
 
-        return true;
+    /**
+     * The artifacts scanned and fingerprinted once on the build node for all sites
+     */
+    private class Content {
+        final private File workDir;
+        private String[] paths;
+        private long[] sizes;
+        private String fingerprint;
+        private File stageDir;
+        private File archive;
+
+        private Content(File workDir) {
+            this.workDir = workDir;
+        }
+
+        /**
+         * Get the archive of the matched files, created by the first site that uploads it
+         * @param tracer the tracer recording the archive stage
+         * @return The archive in a temporary directory
+         * @throws IOException
+         */
+        private synchronized File getArchive(Tracer tracer) throws IOException {
+            if (archive != null) {
+                return archive;
+            }
+
+            String archiveName = VersionArchive.getArchiveName(compressArchive);
+            stageDir = File.createTempFile("ucd-archive", "");
+            if (!stageDir.delete() || !stageDir.mkdir()) {
+                throw new IOException("Could not create directory " + stageDir.getAbsolutePath());
+            }
+
+            File newArchive = new File(stageDir, archiveName);
+            listener.getLogger().println("Bundling " + paths.length + " files into archive " + archiveName);
+            TraceSpan span = tracer.start("archive").attribute("files", paths.length);
+            try {
+                VersionArchive.create(workDir, paths, newArchive, compressArchive);
+                span.attribute("bytes", newArchive.length());
+            }
+            catch (IOException ex) {
+                span.fail(ex);
+                throw ex;
+            }
+            finally {
+                tracer.end(span);
+            }
+            listener.getLogger().println("Created archive of " + newArchive.length() + " bytes.");
+
+            archive = newArchive;
+            return archive;
+        }
+
+        /**
+         * Delete the temporary archive
+         */
+        private synchronized void delete() {
+            if (stageDir != null) {
+                new File(stageDir, VersionArchive.getArchiveName(compressArchive)).delete();
+                stageDir.delete();
+            }
+        }
     }
 
     @Override
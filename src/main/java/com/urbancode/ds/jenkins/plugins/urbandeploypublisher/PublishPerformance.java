@@ -0,0 +1,199 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class summarizes the phase durations, size and throughput of one publish
+ * from the spans recorded by its {@link Tracer}
+ *
+ */
+public class PublishPerformance {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    /**
+     * The reported phases, in publish order
+     */
+    public static final List<String> PHASES = Arrays.asList(
+            "Scan", "Fingerprint", "Create", "Upload", "Properties", "Link", "Deploy Wait");
+
+    private static final Map<String, String> SPAN_PHASES = new LinkedHashMap<String, String>();
+    static {
+        SPAN_PHASES.put("scan", "Scan");
+        SPAN_PHASES.put("fingerprint", "Fingerprint");
+        SPAN_PHASES.put("createComponentVersion", "Create");
+        SPAN_PHASES.put("archive", "Upload");
+        SPAN_PHASES.put("uploadVersionFiles", "Upload");
+        SPAN_PHASES.put("setComponentVersionProperties", "Properties");
+        SPAN_PHASES.put("addLinkToComp", "Link");
+        SPAN_PHASES.put("deploymentWait", "Deploy Wait");
+    }
+
+    /**
+     * Summarize the spans of a publish
+     *
+     * @param component The configured component, used if the spans do not name it
+     * @param spans All spans recorded by the publish
+     * @param succeeded Whether the publish succeeded
+     * @return The summary
+     */
+    public static PublishPerformance fromSpans(String component, List<TraceSpan> spans, boolean succeeded) {
+        PublishPerformance performance = new PublishPerformance(component, succeeded);
+        long start = Long.MAX_VALUE;
+        long end = Long.MIN_VALUE;
+
+        for (TraceSpan span : spans) {
+            if (span.getDuration() < 0) {
+                continue;
+            }
+            start = Math.min(start, span.getStartTime());
+            end = Math.max(end, span.getStartTime() + span.getDuration());
+
+            String phase = SPAN_PHASES.get(span.getName());
+            if (phase != null) {
+                performance.phaseMillis.put(phase, performance.phaseMillis.get(phase) + span.getDuration() / 1000);
+            }
+
+            if ("publishArtifacts".equals(span.getName())) {
+                Map<String, String> attributes = span.getAttributes();
+                if (attributes.containsKey("component")) {
+                    performance.component = attributes.get("component");
+                }
+                if (attributes.containsKey("reusedVersion")) {
+                    performance.version = attributes.get("reusedVersion");
+                }
+                else if (attributes.containsKey("version")) {
+                    performance.version = attributes.get("version");
+                }
+                if (attributes.containsKey("files")) {
+                    performance.files = Integer.parseInt(attributes.get("files"));
+                }
+                if (attributes.containsKey("bytes")) {
+                    performance.bytes = Long.parseLong(attributes.get("bytes"));
+                }
+            }
+        }
+
+        if (start <= end) {
+            performance.totalMillis = (end - start) / 1000;
+        }
+
+        return performance;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    private String component;
+    private String version;
+    final private boolean succeeded;
+    final private Map<String, Long> phaseMillis = new LinkedHashMap<String, Long>();
+    private long totalMillis;
+    private int files = -1;
+    private long bytes = -1;
+
+    private PublishPerformance(String component, boolean succeeded) {
+        this.component = component;
+        this.succeeded = succeeded;
+        for (String phase : PHASES) {
+            phaseMillis.put(phase, 0L);
+        }
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    /**
+     * @return The published or reused version, null if no version was published
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * @param phase One of {@link #PHASES}
+     * @return The time spent in the phase in milliseconds
+     */
+    public long getPhaseMillis(String phase) {
+        Long millis = phaseMillis.get(phase);
+        return millis != null ? millis : 0;
+    }
+
+    /**
+     * @return The time spent in each phase, in publish order
+     */
+    public List<String> getPhaseTexts() {
+        List<String> texts = new ArrayList<String>();
+        for (String phase : PHASES) {
+            texts.add(formatMillis(getPhaseMillis(phase)));
+        }
+        return texts;
+    }
+
+    /**
+     * @return The wall clock time from the first to the last recorded span in milliseconds
+     */
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public String getTotalText() {
+        return formatMillis(totalMillis);
+    }
+
+    /**
+     * @return The number of published files or -1 if they were not counted
+     */
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * @return The number of published bytes or -1 if they were not counted
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public String getFilesText() {
+        return files >= 0 ? Integer.toString(files) : "-";
+    }
+
+    public String getBytesText() {
+        return bytes >= 0 ? UploadProgress.formatBytes(bytes) : "-";
+    }
+
+    /**
+     * @return The upload throughput or "-" if the size or the upload time is unknown
+     */
+    public String getThroughputText() {
+        long uploadMillis = getPhaseMillis("Upload");
+        if (bytes < 0 || uploadMillis <= 0) {
+            return "-";
+        }
+        return UploadProgress.formatBytes(bytes * 1000 / uploadMillis) + "/s";
+    }
+
+    private static String formatMillis(long millis) {
+        if (millis < 1000) {
+            return millis + " ms";
+        }
+        return String.format("%.1f s", millis / 1000.0);
+    }
+}
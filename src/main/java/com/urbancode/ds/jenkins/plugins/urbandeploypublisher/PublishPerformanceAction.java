@@ -0,0 +1,70 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.Action;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class shows the performance of every publish of a build on the build page
+ * and provides the data points of the {@link PublishPerformanceProjectAction} trend graph
+ *
+ */
+public class PublishPerformanceAction implements Action {
+
+    final private List<PublishPerformance> publishes = new ArrayList<PublishPerformance>();
+
+    /**
+     * Record the performance of a publish
+     *
+     * @param performance
+     */
+    public synchronized void add(PublishPerformance performance) {
+        publishes.add(performance);
+    }
+
+    /**
+     * @return The performance of every publish, in completion order
+     */
+    public synchronized List<PublishPerformance> getPublishes() {
+        return new ArrayList<PublishPerformance>(publishes);
+    }
+
+    /**
+     * @param phase One of {@link PublishPerformance#PHASES}
+     * @return The time all publishes of the build spent in the phase in milliseconds
+     */
+    public synchronized long getPhaseMillis(String phase) {
+        long millis = 0;
+        for (PublishPerformance publish : publishes) {
+            millis += publish.getPhaseMillis(phase);
+        }
+        return millis;
+    }
+
+    public List<String> getPhases() {
+        return PublishPerformance.PHASES;
+    }
+
+    @Override
+    public String getIconFileName() {
+        // shown as a summary on the build page only
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "UCD Publish Performance";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.util.ChartUtil.NumberOnlyBuildLabel;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+
+import java.awt.Color;
+import java.io.IOException;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.data.category.CategoryDataset;
+import org.jfree.ui.RectangleInsets;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * This class shows the trend of the publish phase durations over the recent builds of a job
+ *
+ */
+public class PublishPerformanceProjectAction implements Action {
+
+    private static final int MAX_BUILDS = 30;
+
+    final private AbstractProject<?, ?> project;
+
+    public PublishPerformanceProjectAction(AbstractProject<?, ?> project) {
+        this.project = project;
+    }
+
+    public AbstractProject<?, ?> getProject() {
+        return project;
+    }
+
+    /**
+     * @return Whether any recent build recorded publish performance
+     */
+    public boolean isGraphAvailable() {
+        return getLastBuildWithPerformance() != null;
+    }
+
+    /**
+     * Render the trend graph
+     *
+     * @param req
+     * @param rsp
+     * @throws IOException
+     */
+    public void doGraph(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        AbstractBuild<?, ?> lastBuild = getLastBuildWithPerformance();
+        if (lastBuild == null) {
+            rsp.setStatus(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        new Graph(lastBuild.getTimestamp(), 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                return createChart(buildDataset());
+            }
+        }.doPng(req, rsp);
+    }
+
+    private AbstractBuild<?, ?> getLastBuildWithPerformance() {
+        int count = 0;
+        for (AbstractBuild<?, ?> build = project.getLastBuild();
+                build != null && count < MAX_BUILDS;
+                build = build.getPreviousBuild(), count++) {
+            if (build.getAction(PublishPerformanceAction.class) != null) {
+                return build;
+            }
+        }
+        return null;
+    }
+
+    private CategoryDataset buildDataset() {
+        DataSetBuilder<String, NumberOnlyBuildLabel> dataset = new DataSetBuilder<String, NumberOnlyBuildLabel>();
+
+        int count = 0;
+        for (AbstractBuild<?, ?> build = project.getLastBuild();
+                build != null && count < MAX_BUILDS;
+                build = build.getPreviousBuild(), count++) {
+            PublishPerformanceAction action = build.getAction(PublishPerformanceAction.class);
+            if (action == null) {
+                continue;
+            }
+
+            NumberOnlyBuildLabel label = new NumberOnlyBuildLabel(build);
+            for (String phase : PublishPerformance.PHASES) {
+                dataset.add(action.getPhaseMillis(phase) / 1000.0, phase, label);
+            }
+        }
+
+        return dataset.build();
+    }
+
+    private static JFreeChart createChart(CategoryDataset dataset) {
+        JFreeChart chart = ChartFactory.createStackedAreaChart(
+                null, null, "seconds", dataset, PlotOrientation.VERTICAL, true, true, false);
+        chart.setBackgroundPaint(Color.white);
+
+        CategoryPlot plot = chart.getCategoryPlot();
+        plot.setBackgroundPaint(Color.WHITE);
+        plot.setOutlinePaint(null);
+        plot.setForegroundAlpha(0.8f);
+        plot.setRangeGridlinesVisible(true);
+        plot.setRangeGridlinePaint(Color.black);
+
+        CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+        plot.setDomainAxis(domainAxis);
+        domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+        domainAxis.setLowerMargin(0.0);
+        domainAxis.setUpperMargin(0.0);
+        domainAxis.setCategoryMargin(0.0);
+
+        plot.setInsets(new RectangleInsets(0, 0, 0, 5.0));
+        return chart;
+    }
+
+    @Override
+    public String getIconFileName() {
+        // shown as a trend graph on the job page only
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "UCD Publish Performance";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ucd-performance";
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class returns the outcome of a {@link PublishArtifactsCallable} to the controller
+ *
+ */
+public class PublishResult implements Serializable {
+
+    private static final long serialVersionUID = -1530722396178093518L;
+
+    final private String version;
+    final private List<TraceSpan> spans;
+    final private List<SiteResult> additionalSites;
+    final private AbortException failure;
+
+    /**
+     * @param version The name of the version holding the artifacts
+     * @param spans The spans recorded while publishing
+     */
+    public PublishResult(String version, List<TraceSpan> spans) {
+        this(version, spans, new ArrayList<SiteResult>(), null);
+    }
+
+    /**
+     * @param version The name of the version holding the artifacts, or null if publishing failed
+     * @param spans The spans recorded while publishing
+     * @param additionalSites The outcome of the publish to every additional site
+     * @param failure Why publishing to the primary site failed, or null
+     */
+    public PublishResult(
+            String version,
+            List<TraceSpan> spans,
+            List<SiteResult> additionalSites,
+            AbortException failure)
+    {
+        this.version = version;
+        this.spans = spans;
+        this.additionalSites = additionalSites;
+        this.failure = failure;
+    }
+
+    /**
+     * @return The name of the version holding the artifacts, which differs from the requested
+     *         version when an identical existing version was reused
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public List<TraceSpan> getSpans() {
+        return spans;
+    }
+
+    /**
+     * @return The outcome of the publish to every additional site, in configured order
+     */
+    public List<SiteResult> getAdditionalSites() {
+        return additionalSites;
+    }
+
+    /**
+     * Throw the failure of the publish to the primary site, if any
+     *
+     * @throws AbortException
+     */
+    public void checkFailure() throws AbortException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * The outcome of publishing the same content to an additional site
+     */
+    public static class SiteResult implements Serializable {
+
+        private static final long serialVersionUID = 4630931851263425815L;
+
+        final private String siteName;
+        final private String version;
+        final private UUID failedVersionId;
+        final private String error;
+
+        /**
+         * @param siteName The profile name of the site
+         * @param version The name of the version holding the artifacts, or null if publishing failed
+         * @param failedVersionId The id of the incomplete version left by a failed upload, or null
+         * @param error Why publishing failed, or null
+         */
+        public SiteResult(String siteName, String version, UUID failedVersionId, String error) {
+            this.siteName = siteName;
+            this.version = version;
+            this.failedVersionId = failedVersionId;
+            this.error = error;
+        }
+
+        public String getSiteName() {
+            return siteName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public UUID getFailedVersionId() {
+            return failedVersionId;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class groups the concurrent publishes of one component to one site, such as the axes of a
+ * matrix build, into a session on the controller. The publishes of a session share the metadata
+ * they would otherwise each look up again: the version property sheet with its definitions and
+ * whether the component exists. A session ends with its last publish, so no metadata outlives it.
+ *
+ */
+public class PublishSession {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final Map<String, PublishSession> SESSIONS = new HashMap<String, PublishSession>();
+
+    /**
+     * Join the session of a component, started by the first publish. Every joined session must
+     * be left in a finally block.
+     *
+     * @param site The display name of the site
+     * @param user The user publishing, empty for the user of the site
+     * @param component The resolved component name
+     * @return The session
+     */
+    public static synchronized PublishSession join(String site, String user, String component) {
+        String key = site + "\n" + user + "\n" + component;
+        PublishSession session = SESSIONS.get(key);
+        if (session == null) {
+            session = new PublishSession(key);
+            SESSIONS.put(key, session);
+        }
+        session.publishes++;
+        return session;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String key;
+    private int publishes;
+    private RestClientHelper.PropSheetDef versionPropSheetDef;
+    private volatile boolean componentVerified;
+
+    private PublishSession(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Leave the session, which ends once no publish is left
+     */
+    public void leave() {
+        synchronized (PublishSession.class) {
+            if (--publishes == 0) {
+                SESSIONS.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return The number of publishes in the session, including the caller
+     */
+    public int getPublishes() {
+        synchronized (PublishSession.class) {
+            return publishes;
+        }
+    }
+
+    /**
+     * Get the version property sheet of the component, loaded by the first publish that needs it
+     *
+     * @param clientHelper The helper of the calling publish, used for the lookup
+     * @param component
+     * @return The property sheet definition shared by the session
+     * @throws AbortException
+     */
+    synchronized RestClientHelper.PropSheetDef getVersionPropSheetDef(
+            RestClientHelper clientHelper,
+            String component)
+    throws AbortException {
+        if (versionPropSheetDef == null) {
+            versionPropSheetDef = clientHelper.loadVersionPropSheetDef(component);
+        }
+        return versionPropSheetDef;
+    }
+
+    /**
+     * @return Whether a publish of the session already found the component on the server
+     */
+    public boolean isComponentVerified() {
+        return componentVerified;
+    }
+
+    /**
+     * Record that the component exists on the server
+     */
+    public void componentVerified() {
+        componentVerified = true;
+    }
+}
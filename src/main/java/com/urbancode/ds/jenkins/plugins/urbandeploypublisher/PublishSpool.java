@@ -0,0 +1,394 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.PeriodicWork;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * This class replays publishes that could not reach the UCD server. The artifacts of a spooled
+ * publish are staged on the controller with its metadata, and the spool is replayed in order
+ * once the site answers again, so the builds that spooled them do not fail or wait.
+ *
+ */
+@Extension
+public class PublishSpool extends AsyncPeriodicWork {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final long RETRY_INTERVAL = 60 * 1000L;
+    private static final long MAX_BACKOFF = 30 * 60 * 1000L;
+    // milliseconds the site must answer within to be replayed to
+    private static final int PROBE_TIMEOUT = 10 * 1000;
+    // publishes for a site that has been removed from the configuration are dropped after this many attempts
+    private static final int MAX_ATTEMPTS_WITHOUT_SITE = 10;
+    private static final String SPOOL_FILE = "ucd-spool.xml";
+    private static final String SPOOL_DIR = "ucd-spool";
+
+    /**
+     * @return The registered spool
+     */
+    public static PublishSpool get() {
+        return PeriodicWork.all().get(PublishSpool.class);
+    }
+
+    /**
+     * Check whether a site answers quickly enough to publish to
+     *
+     * @param site The site to probe
+     * @return Whether the preferred endpoint of the site answered within the probe timeout
+     */
+    public static boolean isAvailable(UrbanDeploySite site) {
+        try {
+            site.probe(site.getPreferredUri().toString(), PROBE_TIMEOUT);
+            return true;
+        }
+        catch (Exception ex) {
+            return false;
+        }
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    // the directory of the spool file and the staged artifacts, null for the Jenkins root directory
+    final private File rootDir;
+    private List<Entry> entries;
+
+    public PublishSpool() {
+        this(null);
+    }
+
+    /**
+     * @param rootDir The directory to keep the spool in, or null for the Jenkins root directory
+     */
+    PublishSpool(File rootDir) {
+        super("IBM UrbanCode Deploy publish spool");
+        this.rootDir = rootDir;
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RETRY_INTERVAL;
+    }
+
+    /**
+     * Stage the matched artifacts on the controller and queue the publish for replay
+     *
+     * @param workDir The directory on the build node the patterns are relative to
+     * @param includes The newline separated include patterns
+     * @param excludes The newline separated exclude patterns
+     * @param entry The metadata of the publish
+     * @return The number of staged files
+     * @throws IOException if the artifacts could not be staged or the spool could not be saved
+     * @throws InterruptedException
+     */
+    public int spool(FilePath workDir, String includes, String excludes, Entry entry)
+    throws IOException, InterruptedException {
+        FilePath stageDir = new FilePath(getStageDir(entry));
+        int files;
+        try {
+            files = workDir.copyRecursiveTo(toFileMask(includes, "**"), toFileMask(excludes, null), stageDir);
+        }
+        catch (IOException ex) {
+            stageDir.deleteRecursive();
+            throw ex;
+        }
+
+        synchronized (this) {
+            getEntries().add(entry);
+            save();
+        }
+        return files;
+    }
+
+    /**
+     * Check whether publishes of a component are waiting for replay. A new publish of the
+     * component must be spooled behind them to keep the versions in order.
+     *
+     * @param siteName The profile name of the site
+     * @param component The name of the component
+     * @return Whether the spool holds a publish of the component to the site
+     */
+    public synchronized boolean hasPending(String siteName, String component) {
+        for (Entry entry : getEntries()) {
+            if (entry.siteName.equals(siteName) && entry.component.equals(component)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of publishes waiting for replay
+     */
+    public synchronized int size() {
+        return getEntries().size();
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        long now = System.currentTimeMillis();
+        List<Entry> pending;
+
+        synchronized (this) {
+            pending = new ArrayList<Entry>(getEntries());
+        }
+
+        // a site that failed once is not retried in this round, so its later publishes stay in order
+        Set<String> blockedSites = new HashSet<String>();
+        List<Entry> finished = new ArrayList<Entry>();
+        for (Entry entry : pending) {
+            if (blockedSites.contains(entry.siteName)) {
+                continue;
+            }
+            if (entry.nextAttempt > now) {
+                blockedSites.add(entry.siteName);
+                continue;
+            }
+
+            String description = "version '" + entry.version + "' of component '" + entry.component + "'";
+            try {
+                if (replay(entry, listener)) {
+                    listener.getLogger().println("Published spooled " + description + ".");
+                    finished.add(entry);
+                }
+                else if (entry.attempts >= MAX_ATTEMPTS_WITHOUT_SITE) {
+                    listener.error("Giving up spooled " + description + ", site '" + entry.siteName
+                            + "' is no longer configured.");
+                    finished.add(entry);
+                }
+                else {
+                    blockedSites.add(entry.siteName);
+                }
+            }
+            catch (AbortException ex) {
+                long backoff = Math.min(MAX_BACKOFF, RETRY_INTERVAL << Math.min(entry.attempts, 20));
+                entry.nextAttempt = System.currentTimeMillis() + backoff;
+                blockedSites.add(entry.siteName);
+                listener.error("Failed to publish spooled " + description + ", retrying in "
+                        + (backoff / 1000) + " seconds : " + ex.getMessage());
+            }
+        }
+
+        for (Entry entry : finished) {
+            new FilePath(getStageDir(entry)).deleteRecursive();
+        }
+
+        synchronized (this) {
+            getEntries().removeAll(finished);
+            save();
+        }
+    }
+
+    /**
+     * Publish a spooled version if its site is available
+     *
+     * @return Whether the version was published, false if the site is not configured
+     * @throws AbortException if the site is unavailable or the publish failed
+     */
+    boolean replay(Entry entry, TaskListener listener) throws AbortException {
+        entry.attempts++;
+
+        UrbanDeploySite site = null;
+        for (UrbanDeploySite configuredSite : UrbanDeployPublisher.DESCRIPTOR.getSites()) {
+            if (configuredSite.getDisplayName().equals(entry.siteName)) {
+                site = configuredSite;
+            }
+        }
+        if (site == null) {
+            entry.nextAttempt = System.currentTimeMillis() + RETRY_INTERVAL;
+            return false;
+        }
+        if (!isAvailable(site)) {
+            throw new AbortException("IBM UrbanCode Deploy site '" + entry.siteName + "' is unavailable");
+        }
+
+        RestClientHelper clientHelper;
+        if (entry.altUser == null || entry.altUser.isEmpty()) {
+            clientHelper = new RestClientHelper(site.getPreferredUri(), site, site.getUser(), site.getPassword());
+        }
+        else {
+            clientHelper = new RestClientHelper(site.getPreferredUri(), site, entry.altUser, entry.altPassword);
+        }
+
+        StreamBuildListener buildListener = new StreamBuildListener(listener.getLogger(), Charset.defaultCharset());
+        PublishArtifactsCallable task = new PublishArtifactsCallable(
+                clientHelper,
+                getStageDir(entry).getAbsolutePath(),
+                null,
+                "**/*",
+                "",
+                entry.component,
+                entry.version,
+                entry.description,
+                false,
+                false,
+                false,
+                false,
+                null,
+                null,
+                0,
+                buildListener);
+
+        try {
+            task.call().checkFailure();
+        }
+        catch (FailedVersionException ex) {
+            // the incomplete version must be gone before the next attempt creates it again
+            try {
+                VersionCleanupQueue.get().enqueue(entry.siteName, entry.altUser, entry.altPassword,
+                        ex.getVersionId(), entry.component, entry.version);
+            }
+            catch (IOException e) {
+                listener.error("Failed to queue deletion of component version : " + e.getMessage());
+            }
+            throw ex;
+        }
+
+        if (entry.properties != null && entry.properties.length() > 0) {
+            clientHelper.setComponentVersionProperties(entry.component, entry.version, entry.properties,
+                    buildListener);
+        }
+        if (entry.linkUrl != null) {
+            try {
+                clientHelper.addLinkToComp(entry.component, entry.version, entry.linkName, entry.linkUrl);
+            }
+            catch (AbortException ex) {
+                // the version is published, a missing link does not warrant publishing it again
+                listener.getLogger().println("[Warning] " + ex.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private static String toFileMask(String patterns, String defaultMask) {
+        StringBuilder mask = new StringBuilder();
+        for (String pattern : RestClientHelper.splitFiles(patterns != null ? patterns : "")) {
+            if (mask.length() > 0) {
+                mask.append(",");
+            }
+            mask.append(pattern.trim());
+        }
+        return mask.length() > 0 ? mask.toString() : defaultMask;
+    }
+
+    private File getStageDir(Entry entry) {
+        return new File(new File(getRootDir(), SPOOL_DIR), entry.id);
+    }
+
+    private File getRootDir() {
+        return rootDir != null ? rootDir : Hudson.getInstance().getRootDir();
+    }
+
+    private List<Entry> getEntries() {
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            XmlFile file = getSpoolFile();
+            if (file.exists()) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    List<Entry> saved = (List<Entry>) file.read();
+                    entries.addAll(saved);
+                }
+                catch (IOException ex) {
+                    // an unreadable spool cannot be replayed, start over with the new publishes
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void save() throws IOException {
+        getSpoolFile().write(new ArrayList<Entry>(entries));
+    }
+
+    private XmlFile getSpoolFile() {
+        return new XmlFile(Hudson.XSTREAM, new File(getRootDir(), SPOOL_FILE));
+    }
+
+    /**
+     * A spooled publish
+     */
+    public static class Entry {
+        final private String id = UUID.randomUUID().toString();
+        final private String siteName;
+        final private String altUser;
+        final private Secret altPassword;
+        final private String component;
+        final private String version;
+        final private String description;
+        final private String properties;
+        final private String linkName;
+        final private String linkUrl;
+        private int attempts;
+        private long nextAttempt;
+
+        /**
+         * @param siteName The profile name of the site to publish to
+         * @param altUser The alternative user to publish as, or empty for the site user
+         * @param altPassword The password of the alternative user
+         * @param component The name of the component
+         * @param version The name of the version to create
+         * @param description The description of the version
+         * @param properties The newline separated version properties
+         * @param linkName The name of the link to the build, or null
+         * @param linkUrl The url of the build, or null
+         */
+        public Entry(
+                String siteName,
+                String altUser,
+                Secret altPassword,
+                String component,
+                String version,
+                String description,
+                String properties,
+                String linkName,
+                String linkUrl)
+        {
+            this.siteName = siteName;
+            this.altUser = altUser;
+            this.altPassword = altPassword;
+            this.component = component;
+            this.version = version;
+            this.description = description;
+            this.properties = properties;
+            this.linkName = linkName;
+            this.linkUrl = linkUrl;
+        }
+
+        public String getSiteName() {
+            return siteName;
+        }
+
+        public String getComponent() {
+            return component;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.InvisibleAction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class records the component versions published by a build so a later
+ * deploy step can request all of them in a single application process
+ *
+ */
+public class PublishedVersionsAction extends InvisibleAction {
+
+    private Map<String, String> versions = new LinkedHashMap<String, String>();
+
+    /**
+     * Record a published component version, replacing an earlier version of the same component
+     *
+     * @param component The name of the component
+     * @param version The name of the published or reused version
+     */
+    public synchronized void record(String component, String version) {
+        versions.put(component, version);
+    }
+
+    /**
+     * @return The published version of every component, in publish order
+     */
+    public synchronized Map<String, String> getVersions() {
+        return new LinkedHashMap<String, String>(versions);
+    }
+}
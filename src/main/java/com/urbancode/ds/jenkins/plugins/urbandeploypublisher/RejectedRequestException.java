@@ -0,0 +1,40 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+
+/**
+ * This exception reports a request that the UCD server answered with an error status, as opposed
+ * to a server that could not be reached at all.
+ *
+ */
+public class RejectedRequestException extends AbortException {
+
+    private static final long serialVersionUID = -2270912469035519318L;
+
+    final private int statusCode;
+
+    public RejectedRequestException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return The status code of the response
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return Whether the same request may succeed later, as for an overloaded or restarting server
+     */
+    public boolean isTransient() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
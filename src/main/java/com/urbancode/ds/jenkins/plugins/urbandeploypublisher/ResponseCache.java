@@ -0,0 +1,173 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.cache.BasicHttpCacheStorage;
+import org.apache.http.impl.client.cache.CacheConfig;
+import org.apache.http.impl.client.cache.CachingHttpClient;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * This class keeps the metadata responses of a UCD server in memory and revalidates them
+ * with conditional requests, so unchanged metadata is not transferred again by every build.
+ * Only responses the server marks cacheable or sends with an ETag or Last-Modified validator are stored.
+ *
+ */
+@SuppressWarnings("deprecation") // Triggered by CachingHttpClient, required to wrap a DefaultHttpClient
+public class ResponseCache {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final int MAX_ENTRIES = 1000;
+    private static final long MAX_OBJECT_SIZE = 1024 * 1024;
+
+    private static final int MAX_CACHES = 16;
+
+    // responses are private to a user, so every user of a server has its own cache. The caches
+    // of the least recently publishing users are dropped once more users than MAX_CACHES publish.
+    private static final Map<String, ResponseCache> CACHES = new LinkedHashMap<String, ResponseCache>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ResponseCache> eldest) {
+            return size() > MAX_CACHES;
+        }
+    };
+
+    /**
+     * Get the cache of a server and user, created on first use
+     *
+     * @param url The url of the server
+     * @param user The authenticated user
+     * @return The cache
+     */
+    public static synchronized ResponseCache get(URI url, String user) {
+        String key = url + "\n" + user;
+        ResponseCache cache = CACHES.get(key);
+        if (cache == null) {
+            cache = new ResponseCache();
+            CACHES.put(key, cache);
+        }
+        return cache;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private CacheConfig config;
+    final private BasicHttpCacheStorage storage;
+    final private AtomicLong hits = new AtomicLong();
+    final private AtomicLong validations = new AtomicLong();
+    final private AtomicLong misses = new AtomicLong();
+
+    private ResponseCache() {
+        config = CacheConfig.custom()
+                .setMaxCacheEntries(MAX_ENTRIES)
+                .setMaxObjectSize(MAX_OBJECT_SIZE)
+                .setSharedCache(false)
+                .build();
+        // evicts the least recently used entry once full
+        storage = new BasicHttpCacheStorage(config);
+    }
+
+    /**
+     * Execute an HTTP GET request, answering it from the cache when a stored response is still valid.
+     * The body is parsed from the stored response or, on a miss, while it is received.
+     *
+     * @param client The client that sends requests the cache cannot answer
+     * @param uri The uri to request
+     * @param span The span to record the cache status on, may be null
+     * @param index The position of the request passed to the handler
+     * @param handler The handler parsing the response body
+     * @throws IOException
+     */
+    public void read(HttpClient client, URI uri, TraceSpan span, int index, JsonStream.ResponseHandler handler)
+            throws IOException {
+        CachingHttpClient cachingClient = new CachingHttpClient(client, storage, config);
+        HttpGet method = new HttpGet(uri);
+        HttpContext context = new BasicHttpContext();
+
+        try {
+            HttpResponse response = cachingClient.execute(method, context);
+            CacheResponseStatus status =
+                    (CacheResponseStatus) context.getAttribute(CachingHttpClient.CACHE_RESPONSE_STATUS);
+            record(status, span);
+
+            int responseCode = response.getStatusLine().getStatusCode();
+            if (responseCode != 200) {
+                String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+                throw new IOException("Request to " + uri + " failed with status " + responseCode + " : " + body);
+            }
+            if (response.getEntity() == null) {
+                throw new IOException("Request to " + uri + " returned no content");
+            }
+            JsonStream.read(response.getEntity().getContent(), index, handler);
+        }
+        finally {
+            method.releaseConnection();
+        }
+    }
+
+    private void record(CacheResponseStatus status, TraceSpan span) {
+        if (status == CacheResponseStatus.CACHE_HIT) {
+            hits.incrementAndGet();
+        }
+        else if (status == CacheResponseStatus.VALIDATED) {
+            validations.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+        }
+
+        if (span != null) {
+            span.attribute("cacheHits", hits.get())
+                    .attribute("cacheValidations", validations.get())
+                    .attribute("cacheMisses", misses.get());
+        }
+    }
+
+    /**
+     * @return The number of requests answered from the cache without contacting the server
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of requests answered from the cache after the server confirmed it unchanged
+     */
+    public long getValidations() {
+        return validations.get();
+    }
+
+    /**
+     * @return The number of requests the server answered with a full response
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return A one line summary of the cache statistics
+     */
+    public String getSummary() {
+        return hits.get() + " hits, " + validations.get() + " revalidated, " + misses.get() + " misses";
+    }
+}
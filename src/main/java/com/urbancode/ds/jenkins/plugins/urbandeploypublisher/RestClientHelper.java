@@ -12,17 +12,39 @@ import hudson.util.Secret;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
-import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Properties;
+import java.util.Set;
+import java.net.SocketException;
 import java.net.URI;
+import java.net.UnknownHostException;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import javax.ws.rs.core.UriBuilder;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import com.fasterxml.jackson.core.JsonParser;
 
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -40,18 +62,65 @@ import com.urbancode.ud.client.UDRestClient;
  *
  */
 public class RestClientHelper implements Serializable {
+    // connections writing the version properties of one publish at once
+    private static final int PROPERTY_WRITE_CONNECTIONS = 4;
+
     private URI ucdUrl;
     private UrbanDeploySite udSite;
     private String altUser;
     private Secret altPassword;
+    private Tracer tracer = new Tracer();
+    transient private AsyncTransport asyncTransport;
+    // shared with concurrent publishes of the same component on the controller
+    transient private PublishSession session;
+    // false once the helper was sent to a build node, where no build is routed to an endpoint
+    transient private boolean onController;
 
     public RestClientHelper(URI ucdUrl, UrbanDeploySite udSite, String altUser, Secret altPassword) {
         this.ucdUrl = ucdUrl;
+        this.onController = true;
         this.udSite = udSite;
         this.altUser = altUser != null ? altUser.trim() : "";
         this.altPassword = altPassword;
     }
 
+    /**
+     * Share metadata lookups with the other publishes of a session
+     *
+     * @param session The session of the component, null to look up everything again
+     */
+    public void setSession(PublishSession session) {
+        this.session = session;
+    }
+
+    /**
+     * @return The url of the UCD server that receives all metadata requests
+     */
+    public URI getUrl() {
+        return ucdUrl;
+    }
+
+    /**
+     * @return The name of the user all requests are made as
+     */
+    public String getUserName() {
+        return altUser.isEmpty() ? udSite.getUser() : altUser;
+    }
+
+    /**
+     * @return A helper for the same server and user with its own tracer, for work shared by builds
+     */
+    public RestClientHelper copy() {
+        return new RestClientHelper(ucdUrl, udSite, altUser, altPassword);
+    }
+
+    /**
+     * @return The tracer recording a span for every UCD interaction of this helper
+     */
+    public Tracer getTracer() {
+        return tracer;
+    }
+
     /**
      * Creates the component version
      *
@@ -64,25 +133,37 @@ public class RestClientHelper implements Serializable {
             String component,
             String description)
     throws AbortException {
-        VersionClient versionClient = new VersionClient(ucdUrl, getUdClient());
+        TraceSpan span = tracer.start("createComponentVersion")
+                .attribute("component", component).attribute("version", version);
+        try {
+            VersionClient versionClient = new VersionClient(ucdUrl, getUdClient());
 
-        if (version == null || version.isEmpty() || version.length() > 255) {
-            throw new AbortException(String.format("Failed to create version '%s' in UrbanCode Deploy. "
-                    + "UrbanCode Deploy version names' length must be between 1 and  255 characters "
-                    + "long. (Current length: %s)", version, version.length()));
-        }
+            if (version == null || version.isEmpty() || version.length() > 255) {
+                throw new AbortException(String.format("Failed to create version '%s' in UrbanCode Deploy. "
+                        + "UrbanCode Deploy version names' length must be between 1 and  255 characters "
+                        + "long. (Current length: %s)", version, version.length()));
+            }
 
-        UUID versionId;
+            UUID versionId;
 
-        try {
-            versionId = versionClient.createVersion(component, version, description);
+            try {
+                versionId = versionClient.createVersion(component, version, description);
+            }
+            catch (Exception ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to create component version '"
+                        + version + "' on component '" + component + "' : " + ex.getMessage());
+            }
+
+            return versionId;
         }
-        catch (Exception ex) {
-            throw new AbortException("Failed to create component version '"
-                    + version + "' on component '" + component + "' : " + ex.getMessage());
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
         }
-
-        return versionId;
     }
 
     /**
@@ -96,39 +177,224 @@ public class RestClientHelper implements Serializable {
             String includePatterns,
             String excludePatterns)
     throws AbortException {
-        VersionClient versionClient = new VersionClient(ucdUrl, getUdClient());
-        String[] includes  = splitFiles(includePatterns);
-        String[] excludes = splitFiles(excludePatterns);
+        uploadVersionFiles(
+                workDir,
+                component,
+                version,
+                splitFiles(includePatterns),
+                splitFiles(excludePatterns),
+                true);
+    }
 
-        if(workDir.list().length==0) {
-        	throw new AbortException("Base artifact directory " + workDir.getAbsolutePath() + " does not contain any files to upload. Please place files.");
-        }
-        
+    /**
+     * Upload files to component version
+     * @param workDir
+     * @param component
+     * @param version
+     * @param includes
+     * @param excludes
+     * @param verbose whether the rest client prints every uploaded file
+     * @throws AbortException
+     */
+    public void uploadVersionFiles(
+            File workDir,
+            String component,
+            String version,
+            String[] includes,
+            String[] excludes,
+            boolean verbose)
+    throws AbortException {
+        uploadVersionFiles(workDir, component, version, includes, excludes, verbose, null);
+    }
+
+    /**
+     * Upload files to component version, counting the bytes of the upload as they are sent
+     * @param workDir
+     * @param component
+     * @param version
+     * @param includes
+     * @param excludes
+     * @param verbose whether the rest client prints every uploaded file
+     * @param progress the progress to add the sent bytes to, or null
+     * @throws AbortException
+     */
+    public void uploadVersionFiles(
+            File workDir,
+            String component,
+            String version,
+            String[] includes,
+            String[] excludes,
+            boolean verbose,
+            UploadProgress progress)
+    throws AbortException {
+        TraceSpan span = tracer.start("uploadVersionFiles")
+                .attribute("component", component).attribute("version", version);
+        // a counted upload gets a client of its own, so other requests are not counted
+        DefaultHttpClient udClient = progress != null ? newUdClient() : getUdClient();
         try {
-            versionClient.addVersionFiles(
-                    component,
-                    version,
-                    workDir,
-                    "",
-                    includes,
-                    excludes,
-                    true,
-                    true);
+            if (progress != null) {
+                udClient.addRequestInterceptor(CountingEntity.interceptor(progress));
+            }
+
+            VersionClient versionClient = new VersionClient(ucdUrl, udClient);
+
+            if(workDir.list().length==0) {
+            	throw new AbortException("Base artifact directory " + workDir.getAbsolutePath() + " does not contain any files to upload. Please place files.");
+            }
+        
+            try {
+                versionClient.addVersionFiles(
+                        component,
+                        version,
+                        workDir,
+                        "",
+                        includes,
+                        excludes,
+                        true,
+                        verbose);
+            }
+            catch (Exception ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to upload files to version '" + version + "' : " +  ex.getMessage());
+            }
         }
-        catch (Exception ex) {
-            throw new AbortException("Failed to upload files to version '" + version + "' : " +  ex.getMessage());
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            if (progress != null) {
+                udClient.getConnectionManager().shutdown();
+            }
+            tracer.end(span);
         }
     }
 
-    public void deleteComponentVersion(UUID id)
+    /**
+     * Search the most recent versions of a component for one with the given property value
+     *
+     * @param component
+     * @param propName
+     * @param propValue
+     * @param maxVersions The number of most recent versions to search
+     * @return The name of the matching version or null if none matches
+     * @throws AbortException
+     */
+    public String findVersionWithProperty(
+            String component,
+            String propName,
+            String propValue,
+            int maxVersions)
     throws AbortException {
-        VersionClient versionClient = new VersionClient(ucdUrl, getUdClient());
+        TraceSpan span = tracer.start("findVersionWithProperty").attribute("component", component);
+        try {
+            DefaultHttpClient udClient = getUdClient();
+            try {
+                URI versionsUri = UriBuilder.fromUri(ucdUrl).path("cli").path("component").path("versions")
+                        .queryParam("component", component).build();
+                // only the most recent versions are kept while the list is parsed
+                final int limit = Math.max(1, maxVersions);
+                final PriorityQueue<RecentVersion> recentVersions = new PriorityQueue<RecentVersion>(limit + 1);
+                executeMetadataGets(udClient, asList(versionsUri), span, JsonStream.arrayReader(
+                        new JsonStream.ElementHandler() {
+                    @Override
+                    public boolean element(Map<String, String> fields) {
+                        if (fields.containsKey("name")) {
+                            long created = parseLong(fields.get("created"));
+                            recentVersions.add(new RecentVersion(fields.get("name"), created));
+                            if (recentVersions.size() > limit) {
+                                recentVersions.poll();
+                            }
+                        }
+                        return true;
+                    }
+                }, "name", "created"));
+
+                List<RecentVersion> newestFirst = new ArrayList<RecentVersion>(recentVersions);
+                Collections.sort(newestFirst, Collections.reverseOrder());
+
+                List<String> versionNames = new ArrayList<String>();
+                List<URI> propsUris = new ArrayList<URI>();
+                int searched = Math.max(0, Math.min(maxVersions, newestFirst.size()));
+                for (RecentVersion version : newestFirst.subList(0, searched)) {
+                    versionNames.add(version.name);
+                    propsUris.add(UriBuilder.fromUri(ucdUrl).path("cli").path("version").path("versionProperties")
+                            .queryParam("component", component).queryParam("version", version.name).build());
+                }
+
+                final List<FieldMatcher> matchers = new ArrayList<FieldMatcher>();
+                for (int v = 0; v < versionNames.size(); v++) {
+                    matchers.add(new FieldMatcher().expect("name", propName).expect("value", propValue));
+                }
+                executeMetadataGets(udClient, propsUris, span, new JsonStream.ResponseHandler() {
+                    @Override
+                    public void response(int index, JsonParser parser) throws IOException {
+                        JsonStream.readArray(parser, matchers.get(index), "name", "value");
+                    }
+                });
+                for (int v = 0; v < versionNames.size(); v++) {
+                    if (matchers.get(v).isFound()) {
+                        return versionNames.get(v);
+                    }
+                }
+            }
+            catch (IOException ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to search versions of component '" + component + "' : "
+                        + ex.getMessage());
+            }
+
+            return null;
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+        }
+    }
 
+    /**
+     * Delete a component version
+     *
+     * @param id
+     * @return Whether the version was deleted, false if the server no longer knows it
+     * @throws RejectedRequestException if the server refused the deletion
+     * @throws AbortException if the server could not be reached
+     */
+    public boolean deleteComponentVersion(UUID id)
+    throws AbortException {
+        TraceSpan span = tracer.start("deleteComponentVersion").attribute("versionId", id);
+        URI uri = UriBuilder.fromUri(ucdUrl).path("rest").path("deploy").path("version").path(id.toString()).build();
+        HttpDelete method = new HttpDelete(uri);
         try {
-            versionClient.deleteVersion(id);
+            int responseCode;
+            try {
+                HttpResponse response = getUdClient().execute(method);
+                responseCode = response.getStatusLine().getStatusCode();
+            }
+            catch (IOException ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to delete component version with id '" + id + "' : " + ex.getMessage());
+            }
+
+            if (responseCode == 404) {
+                return false;
+            }
+            if (responseCode < 200 || responseCode >= 300) {
+                throw new RejectedRequestException("Failed to delete component version with id '" + id
+                        + "' (status " + responseCode + ")", responseCode);
+            }
+            return true;
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
         }
-        catch (Exception ex) {
-            throw new AbortException("Failed to delete component version with id '" + id + "' : " + ex.getMessage());
+        finally {
+            method.releaseConnection();
+            tracer.end(span);
         }
     }
 
@@ -155,42 +421,264 @@ public class RestClientHelper implements Serializable {
             String versionName,
             BuildListener listener)
     throws AbortException {
-        ApplicationClient appClient = new ApplicationClient(ucdUrl, getUdClient());
         List<String> versions = new ArrayList<String>();
         versions.add(versionName);
 
         Map<String, List<String>> compVersions = new HashMap<String, List<String>>();
         compVersions.put(componentName, versions);
 
-        Map<String, String> requestProperties = readProperties(reqProps);
-        listener.getLogger().println("Creating application process deployment request.");
-
-        UUID appProc;
+        return createDefaultProcessRequest(app, env, proc, desc, reqProps, compVersions, listener);
+    }
 
+    /**
+     * Request an application process deploying the given versions of any number of components
+     *
+     * @param app
+     * @param env
+     * @param proc
+     * @param desc
+     * @param reqProps
+     * @param compVersions The versions to deploy by component name
+     * @param listener
+     * @return The id of the application process request
+     * @throws AbortException
+     */
+    public String createDefaultProcessRequest(
+            String app,
+            String env,
+            String proc,
+            String desc,
+            String reqProps,
+            Map<String, List<String>> compVersions,
+            BuildListener listener)
+    throws AbortException {
+        TraceSpan span = tracer.start("createDefaultProcessRequest").attribute("application", app)
+                .attribute("environment", env).attribute("process", proc)
+                .attribute("components", compVersions.size());
         try {
-            // Confirm all application request properties are fulfilled (not done by UCD)
-            JSONArray unfilledProps = appClient.checkUnfilledApplicationProcessRequestProperties(app, proc, requestProperties);
-            if (unfilledProps.length() > 0) {
-                List<String> props = new ArrayList<String>();
-                for (int i = 0; i < unfilledProps.length(); i++) {
-                    String propName = unfilledProps.getJSONObject(i).getString("name");
-                    props.add(propName);
+            DefaultHttpClient udClient = getUdClient();
+            ApplicationClient appClient = new ApplicationClient(ucdUrl, udClient);
+
+            Map<String, String> requestProperties = readProperties(reqProps);
+            listener.getLogger().println("Creating application process deployment request.");
+
+            UUID appProc;
+
+            try {
+                // Confirm all application request properties are fulfilled (not done by UCD)
+                List<String> props = getUnfilledProperties(udClient, app, proc, requestProperties, span);
+                if (!props.isEmpty()) {
+                    throw new AbortException("Required UrbanCode Deploy Application Process request properties were not supplied: " + props.toString());
                 }
-                throw new AbortException("Required UrbanCode Deploy Application Process request properties were not supplied: " + props.toString());
+
+                // Run the application process
+                appProc = appClient.requestApplicationProcess(app, proc, desc, env, "", false,
+                    compVersions, requestProperties);
+            }
+            catch (Exception ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to create application process request '" + proc + "' : "
+                        + ex.getMessage());
+            }
+
+            listener.getLogger().println("Successfully created application process deployment request.");
+
+            return appProc.toString();
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Check that the credentials are accepted by the UCD server
+     *
+     * @throws AbortException
+     */
+    public void checkCredentials() throws AbortException {
+        URI uri = UriBuilder.fromUri(ucdUrl).path("rest").path("state").build();
+        checkExists("checkCredentials", uri, "The UrbanCode Deploy server");
+    }
+
+    /**
+     * Check that a component exists
+     *
+     * @param component
+     * @throws AbortException
+     */
+    public void checkComponentExists(String component) throws AbortException {
+        if (session != null && session.isComponentVerified()) {
+            return;
+        }
+        URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("component").path("info")
+                .queryParam("component", component).build();
+        checkExists("checkComponentExists", uri, "Component '" + component + "'");
+        if (session != null) {
+            session.componentVerified();
+        }
+    }
+
+    /**
+     * Check that an application exists
+     *
+     * @param app
+     * @throws AbortException
+     */
+    public void checkApplicationExists(String app) throws AbortException {
+        URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("application").path("info")
+                .queryParam("application", app).build();
+        checkExists("checkApplicationExists", uri, "Application '" + app + "'");
+    }
+
+    /**
+     * Check that an environment exists in an application
+     *
+     * @param app
+     * @param env
+     * @throws AbortException
+     */
+    public void checkEnvironmentExists(String app, String env) throws AbortException {
+        URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("environment").path("info")
+                .queryParam("application", app).queryParam("environment", env).build();
+        checkExists("checkEnvironmentExists", uri, "Environment '" + env + "' of application '" + app + "'");
+    }
+
+    /**
+     * Check that an application process exists
+     *
+     * @param app
+     * @param proc
+     * @throws AbortException
+     */
+    public void checkApplicationProcessExists(String app, String proc) throws AbortException {
+        URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("applicationProcess").path("info")
+                .queryParam("application", app).queryParam("applicationProcess", proc).build();
+        checkExists("checkApplicationProcessExists", uri, "Process '" + proc + "' of application '" + app + "'");
+    }
+
+    /**
+     * Check that the request properties fill all required properties of an application process
+     *
+     * @param app
+     * @param proc
+     * @param reqProps
+     * @throws AbortException
+     */
+    public void checkRequestProperties(String app, String proc, String reqProps) throws AbortException {
+        TraceSpan span = tracer.start("checkRequestProperties").attribute("application", app)
+                .attribute("process", proc);
+        DefaultHttpClient udClient = newUdClient();
+        try {
+            List<String> props;
+
+            try {
+                props = getUnfilledProperties(udClient, app, proc, readProperties(reqProps), span);
+            }
+            catch (AbortException ex) {
+                throw ex;
+            }
+            catch (Exception ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to check request properties of application process '" + proc
+                        + "' : " + ex.getMessage());
             }
 
-            // Run the application process
-            appProc = appClient.requestApplicationProcess(app, proc, desc, env, "", false,
-                compVersions, requestProperties);
+            if (!props.isEmpty()) {
+                throw new AbortException("Required UrbanCode Deploy Application Process request properties were "
+                        + "not supplied: " + props.toString());
+            }
         }
-        catch (Exception ex) {
-            throw new AbortException("Failed to create application process request '" + proc + "' : "
-                    + ex.getMessage());
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
         }
+        finally {
+            udClient.getConnectionManager().shutdown();
+            tracer.end(span);
+        }
+    }
 
-        listener.getLogger().println("Successfully created application process deployment request.");
+    /**
+     * Check whether a component version exists
+     *
+     * @param component
+     * @param version
+     * @return Whether the component has a version with the given name
+     * @throws AbortException
+     */
+    public boolean versionExists(String component, String version) throws AbortException {
+        TraceSpan span = tracer.start("versionExists").attribute("component", component)
+                .attribute("version", version);
+        DefaultHttpClient udClient = newUdClient();
+        try {
+            URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("component").path("versions")
+                    .queryParam("component", component).build();
 
-        return appProc.toString();
+            try {
+                // stops reading the version list at the first match
+                FieldMatcher matcher = new FieldMatcher().expect("name", version);
+                readJSONArrayGet(udClient, uri, matcher, "name");
+                return matcher.isFound();
+            }
+            catch (IOException ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to list versions of component '" + component + "' : "
+                        + ex.getMessage());
+            }
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            udClient.getConnectionManager().shutdown();
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Check that a GET request succeeds, with a dedicated client so checks can run concurrently
+     *
+     * @param spanName
+     * @param uri
+     * @param description What the uri refers to, for the error message
+     * @throws AbortException
+     */
+    private void checkExists(String spanName, URI uri, String description) throws AbortException {
+        TraceSpan span = tracer.start(spanName).attribute("uri", uri);
+        DefaultHttpClient udClient = newUdClient();
+        HttpGet method = new HttpGet(uri);
+        try {
+            int responseCode;
+            try {
+                HttpResponse response = udClient.execute(method);
+                responseCode = response.getStatusLine().getStatusCode();
+            }
+            catch (IOException ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to connect to " + uri + " : " + ex.getMessage());
+            }
+
+            if (responseCode == 401) {
+                throw new AbortException("Error connecting to IBM UrbanCode Deploy: Invalid user and/or password");
+            }
+            else if (responseCode != 200) {
+                throw new AbortException(description + " was not found (status " + responseCode + ")");
+            }
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            method.releaseConnection();
+            udClient.getConnectionManager().shutdown();
+            tracer.end(span);
+        }
     }
 
     /**
@@ -209,14 +697,26 @@ public class RestClientHelper implements Serializable {
             String linkUrl)
     throws AbortException
     {
-        ComponentClient compClient = new ComponentClient(ucdUrl, getUdClient());
+        TraceSpan span = tracer.start("addLinkToComp")
+                .attribute("component", compName).attribute("version", versionName);
         try {
-            compClient.addComponentVersionLink(compName, versionName, linkName, linkUrl);
+            ComponentClient compClient = new ComponentClient(ucdUrl, getUdClient());
+            try {
+                compClient.addComponentVersionLink(compName, versionName, linkName, linkUrl);
+            }
+            catch (Exception ex) {
+                recordFailure(ex);
+                ex.printStackTrace();
+                throw new AbortException("Failed to add a version link to the component '" + compName + "' : "
+                        +  ex.getMessage());
+            }
         }
-        catch (Exception ex) {
-            ex.printStackTrace();
-            throw new AbortException("Failed to add a version link to the component '" + compName + "' : "
-                    +  ex.getMessage());
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
         }
     }
 
@@ -229,18 +729,108 @@ public class RestClientHelper implements Serializable {
      */
     public String checkDeploymentProcessResult(String procId)
     throws AbortException {
-        ApplicationClient appClient = new ApplicationClient(ucdUrl, getUdClient());
-        String deploymentResult;
-
+        TraceSpan span = tracer.start("checkDeploymentProcessResult").attribute("requestId", procId);
         try {
-            deploymentResult = appClient.getApplicationProcessStatus(procId);
+            String deploymentResult;
+
+            try {
+                if (udSite.isAsyncTransport()) {
+                    URI statusUri = UriBuilder.fromUri(ucdUrl).path("cli").path("applicationProcessRequest")
+                            .path("requestStatus").queryParam("request", procId).build();
+                    deploymentResult = readJSONObjectGet(statusUri, "result").get("result");
+                    if (deploymentResult == null) {
+                        throw new IOException("The status of request '" + procId + "' has no result");
+                    }
+                }
+                else {
+                    ApplicationClient appClient = new ApplicationClient(ucdUrl, getUdClient());
+                    deploymentResult = appClient.getApplicationProcessStatus(procId);
+                }
+                span.attribute("result", deploymentResult);
+            }
+            catch(Exception ex) {
+                recordFailure(ex);
+                throw new AbortException("Failed to acquire status of application process '" + procId + "' : "
+                        + ex.getMessage());
+            }
+
+            return deploymentResult;
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
         }
-        catch(Exception ex) {
-            throw new AbortException("Failed to acquire status of application process '" + procId + "' : "
-                    + ex.getMessage());
+    }
+
+    /**
+     * Receives the result of a status check
+     */
+    public interface StatusCallback {
+
+        /**
+         * @param result The status of the application process request, null if the check failed
+         * @param error The reason the check failed, null if it succeeded
+         */
+        void status(String result, String error);
+    }
+
+    /**
+     * Check the result of an application process. With the non-blocking transport the check is
+     * only started and its result passed to the callback on an I/O thread, otherwise the check is
+     * made on the calling thread.
+     *
+     * @param procId
+     * @param callback The callback receiving the result
+     */
+    public void checkDeploymentProcessResult(final String procId, final StatusCallback callback) {
+        if (!udSite.isAsyncTransport()) {
+            try {
+                callback.status(checkDeploymentProcessResult(procId), null);
+            }
+            catch (AbortException ex) {
+                callback.status(null, ex.getMessage());
+            }
+            return;
         }
 
-        return deploymentResult;
+        final TraceSpan span = tracer.start("checkDeploymentProcessResult").attribute("requestId", procId);
+        final Map<String, String> status = new HashMap<String, String>();
+        URI statusUri = UriBuilder.fromUri(ucdUrl).path("cli").path("applicationProcessRequest")
+                .path("requestStatus").queryParam("request", procId).build();
+
+        AsyncTransport.Completion completion = new AsyncTransport.Completion() {
+            @Override
+            public void completed() {
+                String result = status.get("result");
+                if (result == null) {
+                    failed(new IOException("The status of request '" + procId + "' has no result"));
+                    return;
+                }
+                span.attribute("result", result);
+                tracer.end(span);
+                callback.status(result, null);
+            }
+
+            @Override
+            public void failed(IOException ex) {
+                recordFailure(ex);
+                AbortException abort = new AbortException("Failed to acquire status of application process '"
+                        + procId + "' : " + ex.getMessage());
+                span.fail(abort);
+                tracer.end(span);
+                callback.status(null, abort.getMessage());
+            }
+        };
+
+        try {
+            getAsyncTransport().read(statusUri, JsonStream.objectReader(status, "result"), completion);
+        }
+        catch (IOException ex) {
+            completion.failed(ex);
+        }
     }
 
     /**
@@ -258,12 +848,145 @@ public class RestClientHelper implements Serializable {
             String properties,
             BuildListener listener)
     throws AbortException {
-        Map<String, String> propertiesToSet = readProperties(properties);
-        DefaultHttpClient udClient = getUdClient();
-        if (!propertiesToSet.isEmpty()) {
+        TraceSpan span = tracer.start("setComponentVersionProperties")
+                .attribute("component", component).attribute("version", version);
+        try {
+            Map<String, String> propertiesToSet = readProperties(properties);
+            if (!propertiesToSet.isEmpty()) {
+                PropertyClient propClient = new PropertyClient(ucdUrl, getUdClient());
+                // concurrent publishes of the component look up the property sheet once per session
+                PropSheetDef propSheetDef = session != null
+                        ? session.getVersionPropSheetDef(this, component)
+                        : loadVersionPropSheetDef(component);
+
+                // a shared sheet creates each new property definition only once, all of them in one pass
+                synchronized (propSheetDef) {
+                    for (String propName : propertiesToSet.keySet()) {
+                        if (!propSheetDef.names.contains(propName)) {
+                            UUID propSheetDefUUID = UUID.fromString(propSheetDef.id);
+                            try {
+                                listener.getLogger().println("Creating property definition for: " + propName);
+                                propClient.createPropDef(
+                                        propSheetDefUUID,
+                                        propSheetDef.path,
+                                        propName,
+                                        "",
+                                        "",
+                                        false,
+                                        "TEXT",
+                                        "");
+                            }
+                            catch (IOException ex) {
+                                recordFailure(ex);
+                                throw new AbortException("An error occurred while creating a new version property '"
+                                        + propName + "' for version '" + version + "' : " + ex.getMessage());
+                            }
+                            catch (JSONException ex) {
+                                throw new AbortException("An error occurred creating the property definition '"
+                                        + propName + "' on property sheet with UUID '" + propSheetDefUUID + "' : "
+                                        + ex.getMessage());
+                            }
+                            propSheetDef.names.add(propName);
+                        }
+                    }
+                }
+
+                setVersionPropertyValues(component, version, propertiesToSet, listener);
+            }
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+        }
+    }
+
+    /**
+     * Write the values of version properties as one batch. The server sets version properties one at
+     * a time, so the batch is sent over several connections at once and awaited together.
+     *
+     * @param component
+     * @param version
+     * @param propertiesToSet The property values by name, their definitions must exist
+     * @param listener
+     * @throws AbortException if any value could not be set
+     */
+    private void setVersionPropertyValues(
+            final String component,
+            final String version,
+            Map<String, String> propertiesToSet,
+            BuildListener listener)
+    throws AbortException {
+        listener.getLogger().println("Setting version properties " + propertiesToSet.keySet());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(propertiesToSet.size(), PROPERTY_WRITE_CONNECTIONS));
+        try {
+            Map<String, Future<Void>> writes = new LinkedHashMap<String, Future<Void>>();
+            for (final Map.Entry<String, String> property : propertiesToSet.entrySet()) {
+                writes.put(property.getKey(), executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        // a client per write, the clients of the site hold a single connection
+                        DefaultHttpClient udClient = newUdClient();
+                        try {
+                            new VersionClient(ucdUrl, udClient).setVersionProperty(
+                                    version, component, property.getKey(), property.getValue(), false);
+                            return null;
+                        }
+                        finally {
+                            udClient.getConnectionManager().shutdown();
+                        }
+                    }
+                }));
+            }
+
+            List<String> failures = new ArrayList<String>();
+            for (Map.Entry<String, Future<Void>> write : writes.entrySet()) {
+                try {
+                    write.getValue().get();
+                }
+                catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                    recordFailure(cause);
+                    failures.add("'" + write.getKey() + "' : " + cause.getMessage());
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new AbortException("An error occurred while setting the value of properties " + failures);
+            }
+            listener.getLogger().println("Successfully set " + writes.size() + " version properties");
+        }
+        catch (InterruptedException ex) {
+            throw new AbortException("Interrupted while setting version properties");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Load the property sheet definition of the versions of a component with the names of its properties
+     *
+     * @param component
+     * @return The property sheet definition
+     * @throws AbortException
+     */
+    PropSheetDef loadVersionPropSheetDef(String component) throws AbortException {
+        TraceSpan span = tracer.start("loadVersionPropSheetDef").attribute("component", component);
+        try {
+            DefaultHttpClient udClient = getUdClient();
+            try {
+                return readVersionPropSheetDef(udClient, component, span);
+            }
+            catch (IOException ex) {
+                // the rest client library answers if the server does not serve these lookups to the plugin
+                span.attribute("fallback", ex.getMessage());
+            }
+
             ComponentClient compClient = new ComponentClient(ucdUrl, udClient);
             PropertyClient propClient = new PropertyClient(ucdUrl, udClient);
-            VersionClient versionClient = new VersionClient(ucdUrl, udClient);
             JSONObject propSheetDef;
             String propSheetDefId;
             String propSheetDefPath;
@@ -277,6 +1000,7 @@ public class RestClientHelper implements Serializable {
                 existingPropDefJsonArray = propClient.getPropSheetDefPropDefs(propSheetDefPath);
             }
             catch (IOException ex) {
+                recordFailure(ex);
                 throw new AbortException("An error occurred acquiring component object for component '"
                         + component + "' : " + ex.getMessage());
             }
@@ -285,75 +1009,114 @@ public class RestClientHelper implements Serializable {
                         + "version property sheet for component '" + component + "' : " + e.getMessage());
             }
 
-            // update existing properties
+            Set<String> names = new HashSet<String>();
             for (int i = 0; i < existingPropDefJsonArray.length(); i++) {
-                JSONObject propDef;
-                String propName;
-
                 try {
-                    propDef = existingPropDefJsonArray.getJSONObject(i);
-                    propName = propDef.getString("name");
+                    names.add(existingPropDefJsonArray.getJSONObject(i).getString("name"));
                 }
                 catch (JSONException ex) {
                     throw new AbortException("An error occurred acquiring an existing property definition "
                             + "for component '" + component + "' : " + ex.getMessage());
                 }
+            }
 
-                String propValue = propertiesToSet.get(propName);
+            return new PropSheetDef(propSheetDefId, propSheetDefPath, names);
+        }
+        catch (AbortException ex) {
+            span.fail(ex);
+            throw ex;
+        }
+        finally {
+            tracer.end(span);
+        }
+    }
 
-                if (propValue != null) {
-                    try {
-                        listener.getLogger().println("Setting version property " + propName);
-                        versionClient.setVersionProperty(version, component, propName, propValue, false);
-                        listener.getLogger().println("Successfully updated version property " + propName);
-                    }
-                    catch (IOException ex) {
-                        throw new AbortException("An error occurred while setting the value of an existing property '"
-                                + propName + "' : " + ex.getMessage());
+    /**
+     * Look up the version property sheet definition of a component and the names of its properties
+     * with the plugin's own GET requests, which the response cache of the site can answer
+     *
+     * @param udClient
+     * @param component
+     * @param span The span to record cache statistics on
+     * @return The property sheet definition
+     * @throws IOException if a lookup failed
+     */
+    private PropSheetDef readVersionPropSheetDef(DefaultHttpClient udClient, String component, TraceSpan span)
+            throws IOException {
+        URI sheetUri = UriBuilder.fromUri(ucdUrl).path("rest").path("deploy").path("component")
+                .segment(component).path("versionPropSheetDef").build();
+        Map<String, String> sheet = new HashMap<String, String>();
+        executeMetadataGets(udClient, asList(sheetUri), span, JsonStream.objectReader(sheet, "id", "path"));
+        String id = sheet.get("id");
+        String path = sheet.get("path");
+        if (id == null || path == null) {
+            throw new IOException("The version property sheet of component '" + component + "' has no id or path");
+        }
+
+        URI propDefsUri = UriBuilder.fromUri(ucdUrl).path("property").path("propSheetDef")
+                .segment(path + ".-1").path("propDefs").build();
+        final Set<String> names = new HashSet<String>();
+        executeMetadataGets(udClient, asList(propDefsUri), span, JsonStream.arrayReader(
+                new JsonStream.ElementHandler() {
+                    @Override
+                    public boolean element(Map<String, String> fields) {
+                        if (fields.containsKey("name")) {
+                            names.add(fields.get("name"));
+                        }
+                        return true;
                     }
-                }
+                }, "name"));
 
-                propertiesToSet.remove(propName);
-            }
+        return new PropSheetDef(id, path, names);
+    }
 
-            // create new properties
-            if (!propertiesToSet.isEmpty()) {
-                listener.getLogger().println("Creating new property definitions.");
-                UUID propSheetDefUUID = UUID.fromString(propSheetDefId);
-
-                for (Map.Entry<String, String> property : propertiesToSet.entrySet()) {
-                    String propName = property.getKey();
-                    String propDescription = "";
-                    String propLabel = "";
-                    Boolean required = false;
-                    String propType = "TEXT";
-                    String propValue = property.getValue();
-
-                    try {
-                        listener.getLogger().println("Creating property definition for: " + propName);
-                        propClient.createPropDef(
-                                propSheetDefUUID,
-                                propSheetDefPath,
-                                propName,
-                                propDescription,
-                                propLabel,
-                                required,
-                                propType,
-                                "");
-                        versionClient.setVersionProperty(version, component, propName, propValue, false);
-                        listener.getLogger().println("Successfully created version property " + propName);
-                    }
-                    catch (IOException ex) {
-                        throw new AbortException("An error occurred while creating a new version property '" + propName
-                                + "' for version '" + version + "' : " + ex.getMessage());
-                    }
-                    catch (JSONException ex) {
-                        throw new AbortException("An error occurred creating the property definition '" + propName
-                                + "' on property sheet with UUID '" + propSheetDefUUID + "' : " + ex.getMessage());
+    /**
+     * Get the required properties of an application process that the request properties leave unfilled
+     *
+     * @param udClient
+     * @param app
+     * @param proc
+     * @param requestProperties
+     * @param span The span to record cache statistics on
+     * @return The names of the unfilled properties
+     * @throws IOException
+     * @throws JSONException
+     */
+    private List<String> getUnfilledProperties(
+            DefaultHttpClient udClient,
+            String app,
+            String proc,
+            final Map<String, String> requestProperties,
+            TraceSpan span)
+    throws IOException, JSONException {
+        final List<String> props = new ArrayList<String>();
+        URI uri = UriBuilder.fromUri(ucdUrl).path("cli").path("applicationProcess").path("unfilledProperties")
+                .queryParam("application", app).queryParam("applicationProcess", proc).build();
+
+        try {
+            // the property definitions are the same for every request, only their filling is checked here
+            executeMetadataGets(udClient, asList(uri), span, JsonStream.arrayReader(new JsonStream.ElementHandler() {
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    String name = fields.get("name");
+                    if (name != null && !requestProperties.containsKey(name)) {
+                        props.add(name);
                     }
+                    return true;
                 }
+            }, "name"));
+        }
+        catch (IOException ex) {
+            // the rest client library answers if the server does not serve this lookup to the plugin
+            span.attribute("fallback", ex.getMessage());
+            props.clear();
+            JSONArray unfilledProps = new ApplicationClient(ucdUrl, udClient)
+                    .checkUnfilledApplicationProcessRequestProperties(app, proc, requestProperties);
+            for (int i = 0; i < unfilledProps.length(); i++) {
+                props.add(unfilledProps.getJSONObject(i).getString("name"));
             }
         }
+        return props;
     }
 
     /**
@@ -365,10 +1128,9 @@ public class RestClientHelper implements Serializable {
      */
     private Map<String, String> readProperties(String properties) throws AbortException {
         Map<String, String> propertiesToSet = new HashMap<String, String>();
-        System.out.println("Properties: " + properties);
         if (properties != null && properties.length() > 0) {
             for (String line : properties.split("\n")) {
-                String[] propDef = line.split("=");
+                String[] propDef = line.split("=", 2);
 
                 if (propDef.length >= 2) {
                     String propName = propDef[0].trim();
@@ -388,7 +1150,7 @@ public class RestClientHelper implements Serializable {
      * @param Newline separated list of filenames
      * @return Array of filenames
      */
-    private String[] splitFiles(String patterns) {
+    static String[] splitFiles(String patterns) {
         List<String> newList = new ArrayList<String>();
 
         String[] patternList = patterns.split("\n");
@@ -402,6 +1164,180 @@ public class RestClientHelper implements Serializable {
         return newList.toArray(new String[newList.size()]);
     }
 
+    /**
+     * Execute an HTTP GET request to the UCD server and read fields of the returned object
+     *
+     * @param uri
+     * @param fields The names of the top level fields to read
+     * @return The requested fields present in the response
+     * @throws IOException
+     */
+    private Map<String, String> readJSONObjectGet(URI uri, String... fields) throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
+        executeJSONGets(getUdClient(), asList(uri), JsonStream.objectReader(values, fields));
+        return values;
+    }
+
+    /**
+     * Execute an HTTP GET request to the UCD server and parse the returned array while it is received
+     *
+     * @param udClient
+     * @param uri
+     * @param handler The handler receiving the requested fields of every element
+     * @param fields The names of the top level fields to read from each element
+     * @throws IOException
+     */
+    private void readJSONArrayGet(DefaultHttpClient udClient, URI uri, JsonStream.ElementHandler handler,
+            String... fields) throws IOException {
+        HttpGet method = new HttpGet(uri);
+        try {
+            JsonParser parser = JsonStream.parse(executeStreamingGet(udClient, method));
+            try {
+                JsonStream.readArray(parser, handler, fields);
+            }
+            finally {
+                parser.close();
+            }
+        }
+        finally {
+            // abandons the rest of the response if the handler stopped early
+            method.releaseConnection();
+        }
+    }
+
+    /**
+     * Execute an HTTP GET request and return the body of a successful response as a stream
+     *
+     * @param udClient
+     * @param method The request, which the caller must release
+     * @return The response body
+     * @throws IOException if the request failed
+     */
+    private InputStream executeStreamingGet(DefaultHttpClient udClient, HttpGet method) throws IOException {
+        HttpResponse response = udClient.execute(method);
+        int responseCode = response.getStatusLine().getStatusCode();
+        if (responseCode != 200) {
+            String body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : "";
+            throw new IOException("Request to " + method.getURI() + " failed with status " + responseCode
+                    + " : " + body);
+        }
+        if (response.getEntity() == null) {
+            throw new IOException("Request to " + method.getURI() + " returned no content");
+        }
+        return response.getEntity().getContent();
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        }
+        catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Execute HTTP GET requests to the UCD server and parse the response bodies while they are
+     * received. The requests are sent concurrently when the site uses the non-blocking transport.
+     *
+     * @param udClient The client of blocking requests
+     * @param uris
+     * @param handler The handler parsing each response body, called in the order of the uris
+     * @throws IOException
+     */
+    private void executeJSONGets(DefaultHttpClient udClient, List<URI> uris, JsonStream.ResponseHandler handler)
+            throws IOException {
+        if (udSite.isAsyncTransport()) {
+            getAsyncTransport().read(uris, handler);
+            return;
+        }
+
+        for (int i = 0; i < uris.size(); i++) {
+            HttpGet method = new HttpGet(uris.get(i));
+            try {
+                JsonStream.read(executeStreamingGet(udClient, method), i, handler);
+            }
+            finally {
+                method.releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Execute HTTP GET requests for slow changing metadata. The responses are served from and
+     * revalidated against the response cache of the site when it is enabled.
+     *
+     * @param udClient The client of blocking requests
+     * @param uris
+     * @param span The span to record cache statistics on
+     * @param handler The handler parsing each response body, called in the order of the uris
+     * @throws IOException
+     */
+    private void executeMetadataGets(
+            DefaultHttpClient udClient,
+            List<URI> uris,
+            TraceSpan span,
+            JsonStream.ResponseHandler handler)
+    throws IOException {
+        if (!udSite.isCacheResponses()) {
+            executeJSONGets(udClient, uris, handler);
+            return;
+        }
+
+        ResponseCache cache = ResponseCache.get(ucdUrl, getUserName());
+        for (int i = 0; i < uris.size(); i++) {
+            cache.read(udClient, uris.get(i), span, i, handler);
+        }
+    }
+
+    private List<URI> asList(URI uri) {
+        List<URI> uris = new ArrayList<URI>();
+        uris.add(uri);
+        return uris;
+    }
+
+    private AsyncTransport getAsyncTransport() {
+        if (asyncTransport == null) {
+            asyncTransport = udSite.getAsyncTransport(altUser, altPassword);
+        }
+        return asyncTransport;
+    }
+
+    private DefaultHttpClient newUdClient() {
+        if (altUser.isEmpty()) {
+            return udSite.getTempClient(udSite.getUser(), udSite.getPassword());
+        }
+        return udSite.getTempClient(altUser, altPassword);
+    }
+
+    /**
+     * Count a request that could not reach the server against the endpoint of this helper, so the
+     * next builds are routed to another endpoint of the site once it failed repeatedly. Errors the
+     * server answered with are not counted.
+     *
+     * @param ex The failure of the request
+     */
+    private void recordFailure(Throwable ex) {
+        if (onController && isConnectionFailure(ex) && !Thread.currentThread().isInterrupted()) {
+            SiteHealthMonitor.getHealth(ucdUrl.toString()).recordFailure(ex.getMessage());
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof NoHttpResponseException
+                    || cause instanceof InterruptedIOException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
     private DefaultHttpClient getUdClient() {
         DefaultHttpClient udClient;
 
@@ -414,4 +1350,65 @@ public class RestClientHelper implements Serializable {
 
         return udClient;
     }
+
+    /**
+     * A version name with its creation time, ordered oldest first
+     */
+    private static class RecentVersion implements Comparable<RecentVersion> {
+        final private String name;
+        final private long created;
+
+        private RecentVersion(String name, long created) {
+            this.name = name;
+            this.created = created;
+        }
+
+        @Override
+        public int compareTo(RecentVersion other) {
+            return created < other.created ? -1 : (created == other.created ? 0 : 1);
+        }
+    }
+
+    /**
+     * The property sheet definition of the versions of a component and the names of its properties
+     */
+    static class PropSheetDef {
+        final private String id;
+        final private String path;
+        final private Set<String> names;
+
+        private PropSheetDef(String id, String path, Set<String> names) {
+            this.id = id;
+            this.path = path;
+            this.names = names;
+        }
+    }
+
+    /**
+     * Looks for an array element with the expected field values and stops at the first match
+     */
+    private static class FieldMatcher implements JsonStream.ElementHandler {
+        final private Map<String, String> expected = new HashMap<String, String>();
+        private boolean found;
+
+        private FieldMatcher expect(String field, String value) {
+            expected.put(field, value);
+            return this;
+        }
+
+        @Override
+        public boolean element(Map<String, String> fields) {
+            for (Map.Entry<String, String> field : expected.entrySet()) {
+                if (!field.getValue().equals(fields.get(field.getKey()))) {
+                    return true;
+                }
+            }
+            found = true;
+            return false;
+        }
+
+        private boolean isFound() {
+            return found;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class periodically probes every endpoint of the configured UCD sites and
+ * routes builds to the healthiest, fastest endpoint. Requests of builds that fail to
+ * reach an endpoint count against it as well.
+ *
+ */
+@Extension
+public class SiteHealthMonitor extends AsyncPeriodicWork {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final long PROBE_INTERVAL = 30 * 1000L;
+    private static final int PROBE_TIMEOUT = 10 * 1000;
+
+    private static final ConcurrentMap<String, EndpointHealth> HEALTH =
+            new ConcurrentHashMap<String, EndpointHealth>();
+
+    /**
+     * Get the recorded health of an endpoint
+     *
+     * @param url The endpoint url
+     * @return The health record, created empty if the endpoint was never probed
+     */
+    public static EndpointHealth getHealth(String url) {
+        EndpointHealth health = HEALTH.get(url);
+        if (health == null) {
+            HEALTH.putIfAbsent(url, new EndpointHealth(url));
+            health = HEALTH.get(url);
+        }
+        return health;
+    }
+
+    /**
+     * Select the endpoint with the lowest average latency among the endpoints that are up.
+     * Endpoints without probe results rank after measured ones, in configured order, and the
+     * first endpoint is returned if all of them are down.
+     *
+     * @param endpoints The endpoint urls in configured order
+     * @return The selected endpoint url
+     */
+    public static String selectEndpoint(List<String> endpoints) {
+        String selected = null;
+        double selectedLatency = Double.MAX_VALUE;
+
+        for (String endpoint : endpoints) {
+            EndpointHealth health = getHealth(endpoint);
+            if (health.isDown()) {
+                continue;
+            }
+
+            double latency = health.getAverageLatency();
+            if (latency < 0) {
+                latency = Double.MAX_VALUE / 2;
+            }
+            if (selected == null || latency < selectedLatency) {
+                selected = endpoint;
+                selectedLatency = latency;
+            }
+        }
+
+        if (selected == null) {
+            selected = endpoints.get(0);
+        }
+
+        return selected;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    public SiteHealthMonitor() {
+        super("IBM UrbanCode Deploy site health monitor");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PROBE_INTERVAL;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        Set<String> configured = new HashSet<String>();
+        for (UrbanDeploySite site : UrbanDeployPublisher.DESCRIPTOR.getSites()) {
+            List<String> endpoints = site.getEndpoints();
+            configured.addAll(endpoints);
+
+            // a single endpoint has no alternative to route to
+            if (endpoints.size() < 2) {
+                continue;
+            }
+
+            for (String endpoint : endpoints) {
+                EndpointHealth health = getHealth(endpoint);
+                try {
+                    health.recordSuccess(site.probe(endpoint, PROBE_TIMEOUT));
+                }
+                catch (Exception ex) {
+                    health.recordFailure(ex.getMessage());
+                    listener.getLogger().println("Probe of " + endpoint + " failed: " + ex.getMessage());
+                }
+            }
+        }
+
+        // forget endpoints that were removed from the configuration
+        HEALTH.keySet().retainAll(configured);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.remoting.Callable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import jenkins.security.Roles;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * This class is called on a channel to copy the matched artifact files out of the workspace into
+ * a staging directory on the build node, so a publish running in the background does not read the
+ * workspace after the build released it. Modification times are kept, so files uploaded during
+ * the build are still recognized.
+ *
+ */
+public class StageArtifactsCallable implements Callable<String, IOException> {
+
+    private static final long serialVersionUID = 3861544817230462911L;
+    private static final String STAGE_DIR = "ucd-stage";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    final private String baseDir;
+    final private String dirOffset;
+    final private String fileIncludePatterns;
+    final private String fileExcludePatterns;
+
+    public StageArtifactsCallable(
+            String baseDir,
+            String dirOffset,
+            String fileIncludePatterns,
+            String fileExcludePatterns)
+    {
+        this.baseDir = baseDir;
+        this.dirOffset = dirOffset;
+        this.fileIncludePatterns = fileIncludePatterns != null ? fileIncludePatterns : "";
+        this.fileExcludePatterns = fileExcludePatterns != null ? fileExcludePatterns : "";
+    }
+
+    /**
+     * Copy the matched files
+     * @return The absolute path of the new staging directory on the build node
+     * @throws IOException if the artifact directory does not exist or a file could not be copied
+     */
+    @Override
+    public String call() throws IOException {
+        File workDir = new File(baseDir);
+        if (!workDir.exists()) {
+            throw new IOException("Base artifact directory '" + workDir.getAbsolutePath() + "' does not exist!");
+        }
+        if (dirOffset != null && dirOffset.trim().length() > 0) {
+            workDir = new File(workDir, dirOffset.trim());
+        }
+
+        File parent = new File(System.getProperty("java.io.tmpdir"), STAGE_DIR);
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent.getAbsolutePath());
+        }
+        File stageDir = File.createTempFile("publish", "", parent);
+        if (!stageDir.delete() || !stageDir.mkdir()) {
+            throw new IOException("Could not create directory " + stageDir.getAbsolutePath());
+        }
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            String[] paths = ArtifactScanner.scan(
+                    workDir,
+                    RestClientHelper.splitFiles(fileIncludePatterns),
+                    RestClientHelper.splitFiles(fileExcludePatterns));
+            for (String path : paths) {
+                copy(new File(workDir, path), new File(stageDir, path), buffer);
+            }
+        }
+        catch (IOException ex) {
+            delete(stageDir);
+            throw ex;
+        }
+
+        return stageDir.getAbsolutePath();
+    }
+
+    private static void copy(File source, File target, byte[] buffer) throws IOException {
+        File dir = target.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir.getAbsolutePath());
+        }
+
+        InputStream in = new FileInputStream(source);
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+
+        target.setLastModified(source.lastModified());
+        if (source.canExecute()) {
+            target.setExecutable(true);
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Override
+    public void checkRoles(RoleChecker checker) throws SecurityException {
+        checker.check(this, Roles.SLAVE);
+    }
+}
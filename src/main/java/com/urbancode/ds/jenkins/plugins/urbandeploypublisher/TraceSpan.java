@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class records the timing and attributes of a single UCD interaction or publish stage
+ *
+ */
+public class TraceSpan implements Serializable {
+
+    private static final long serialVersionUID = 7214590183251866021L;
+
+    final private String name;
+    final private String thread;
+    final private long startTime;
+    final private long startNanos;
+    private long duration = -1;
+    final private Map<String, String> attributes = new LinkedHashMap<String, String>();
+
+    TraceSpan(String name) {
+        this.name = name;
+        this.thread = Thread.currentThread().getName();
+        this.startTime = System.currentTimeMillis() * 1000;
+        this.startNanos = System.nanoTime();
+        attributes.put("status", "ok");
+    }
+
+    /**
+     * Set an attribute of the span, null values are ignored
+     *
+     * @param key
+     * @param value
+     * @return This span
+     */
+    public TraceSpan attribute(String key, Object value) {
+        if (value != null) {
+            attributes.put(key, String.valueOf(value));
+        }
+        return this;
+    }
+
+    /**
+     * Mark the span as failed
+     *
+     * @param ex The failure
+     */
+    public void fail(Exception ex) {
+        attributes.put("status", "error");
+        attributes.put("error", String.valueOf(ex.getMessage()));
+    }
+
+    void end() {
+        duration = (System.nanoTime() - startNanos) / 1000;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * @return The start time in microseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return The duration in microseconds or -1 if the span has not ended
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+}
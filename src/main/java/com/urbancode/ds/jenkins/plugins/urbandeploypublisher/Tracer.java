@@ -0,0 +1,136 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * This class collects the spans of a publish and writes them as a trace file in the
+ * Trace Event Format, which can be opened in chrome://tracing or Perfetto
+ *
+ */
+public class Tracer implements Serializable {
+
+    private static final long serialVersionUID = -3186744512338871027L;
+
+    final private List<TraceSpan> spans = new ArrayList<TraceSpan>();
+
+    /**
+     * Start a span, which must be passed to {@link #end(TraceSpan)} in a finally block
+     *
+     * @param name The span name
+     * @return The started span
+     */
+    public TraceSpan start(String name) {
+        return new TraceSpan(name);
+    }
+
+    /**
+     * End and record a span
+     *
+     * @param span
+     */
+    public synchronized void end(TraceSpan span) {
+        span.end();
+        spans.add(span);
+    }
+
+    /**
+     * @return The number of recorded spans, to be passed to {@link #getSpansSince(int)}
+     */
+    public synchronized int mark() {
+        return spans.size();
+    }
+
+    /**
+     * @param mark A value returned by {@link #mark()}
+     * @return The spans recorded after the mark
+     */
+    public synchronized List<TraceSpan> getSpansSince(int mark) {
+        return new ArrayList<TraceSpan>(spans.subList(mark, spans.size()));
+    }
+
+    /**
+     * Add spans recorded by a copy of this tracer on another node. Spans already recorded
+     * by this tracer, as when the copy was not serialized, are skipped.
+     *
+     * @param remoteSpans
+     */
+    public synchronized void merge(List<TraceSpan> remoteSpans) {
+        for (TraceSpan span : remoteSpans) {
+            if (!spans.contains(span)) {
+                spans.add(span);
+            }
+        }
+    }
+
+    /**
+     * Write the recorded spans as a Trace Event Format file
+     *
+     * @param file The trace file to create
+     * @throws IOException
+     */
+    public synchronized void write(File file) throws IOException {
+        JSONArray events = new JSONArray();
+        Map<String, Integer> threadIds = new HashMap<String, Integer>();
+
+        try {
+            for (TraceSpan span : spans) {
+                Integer threadId = threadIds.get(span.getThread());
+                if (threadId == null) {
+                    threadId = threadIds.size() + 1;
+                    threadIds.put(span.getThread(), threadId);
+
+                    JSONObject threadName = new JSONObject();
+                    threadName.put("name", "thread_name");
+                    threadName.put("ph", "M");
+                    threadName.put("pid", 1);
+                    threadName.put("tid", threadId);
+                    threadName.put("args", new JSONObject().put("name", span.getThread()));
+                    events.put(threadName);
+                }
+
+                JSONObject event = new JSONObject();
+                event.put("name", span.getName());
+                event.put("cat", "ucd");
+                event.put("ph", "X");
+                event.put("ts", span.getStartTime());
+                event.put("dur", span.getDuration());
+                event.put("pid", 1);
+                event.put("tid", threadId);
+                event.put("args", new JSONObject(span.getAttributes()));
+                events.put(event);
+            }
+        }
+        catch (JSONException ex) {
+            throw new IOException("Failed to build trace events: " + ex.getMessage());
+        }
+
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("{\"traceEvents\":");
+            writer.write(events.toString());
+            writer.write("}");
+        }
+        finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+/**
+ * This class tracks how many of the files and bytes of an upload have been sent
+ *
+ */
+public class UploadProgress {
+
+    private static final String[] UNITS = {"B", "KB", "MB", "GB", "TB"};
+
+    final private int totalFiles;
+    final private long totalBytes;
+    final private long startTime;
+    private int files;
+    private long bytes;
+    private long lastSampleTime;
+    private long lastSampleBytes;
+
+    /**
+     * @param totalFiles The number of files to upload
+     * @param totalBytes The number of bytes to upload
+     */
+    public UploadProgress(int totalFiles, long totalBytes) {
+        this.totalFiles = totalFiles;
+        this.totalBytes = totalBytes;
+        this.startTime = System.currentTimeMillis();
+        this.lastSampleTime = startTime;
+    }
+
+    /**
+     * Record uploaded files and bytes
+     *
+     * @param uploadedFiles
+     * @param uploadedBytes
+     */
+    public synchronized void add(int uploadedFiles, long uploadedBytes) {
+        files = Math.min(totalFiles, files + uploadedFiles);
+        bytes += uploadedBytes;
+    }
+
+    /**
+     * Record that all files were uploaded, such as when the files were sent in fewer requests
+     * than there are files
+     */
+    public synchronized void complete() {
+        files = totalFiles;
+    }
+
+    /**
+     * Take a sample of the progress. The current throughput is measured since the previous sample.
+     *
+     * @return The sample
+     */
+    public synchronized UploadSample sample() {
+        long now = System.currentTimeMillis();
+        long currentRate = now > lastSampleTime ? (bytes - lastSampleBytes) * 1000 / (now - lastSampleTime) : 0;
+        long averageRate = now > startTime ? bytes * 1000 / (now - startTime) : 0;
+        long eta = averageRate > 0 ? (totalBytes - bytes) / averageRate : -1;
+
+        lastSampleTime = now;
+        lastSampleBytes = bytes;
+
+        return new UploadSample(files, totalFiles, bytes, totalBytes, currentRate, averageRate, eta);
+    }
+
+    /**
+     * Format a byte count with a binary unit
+     *
+     * @param bytes
+     * @return The formatted byte count such as "1.5 MB"
+     */
+    public static String formatBytes(long bytes) {
+        double value = bytes;
+        int unit = 0;
+        while (value >= 1024 && unit < UNITS.length - 1) {
+            value /= 1024;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format("%.1f %s", value, UNITS[unit]);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.Util;
+import hudson.model.Run;
+
+import jenkins.model.RunAction2;
+
+/**
+ * This class shows the live progress of an artifact upload on the build page
+ *
+ */
+public class UploadProgressAction implements RunAction2, UploadProgressReporter {
+
+    final private String component;
+    private UploadSample sample;
+    private boolean stalled;
+    private boolean finished;
+    private transient Run<?, ?> run;
+
+    /**
+     * @param component The component the artifacts are uploaded to
+     */
+    public UploadProgressAction(String component) {
+        this.component = component;
+    }
+
+    @Override
+    public synchronized void report(UploadSample sample, boolean stalled, boolean finished) {
+        this.sample = sample;
+        this.stalled = stalled;
+        this.finished = finished;
+    }
+
+    public String getComponent() {
+        return component;
+    }
+
+    public synchronized UploadSample getSample() {
+        return sample;
+    }
+
+    public synchronized boolean isStalled() {
+        return stalled;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> run) {
+        this.run = run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "UCD Upload Progress (" + component + ")";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "ucd-upload-" + Util.rawEncode(component);
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.PrintStream;
+
+/**
+ * This class samples the progress of an upload in the background, logs periodic summaries,
+ * forwards every sample to an optional reporter and warns when the upload stalls
+ *
+ */
+public class UploadProgressMonitor implements Runnable {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final long SAMPLE_INTERVAL = 5 * 1000L;
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private UploadProgress progress;
+    final private PrintStream logger;
+    final private UploadProgressReporter reporter;
+    final private long logInterval;
+    final private long stallTimeout;
+    private Thread thread;
+    private volatile boolean stopped;
+
+    /**
+     * @param progress The progress to sample
+     * @param logger The stream to log summaries and stall warnings to
+     * @param reporter The reporter to forward samples to or null
+     * @param logInterval Milliseconds between summary lines
+     * @param stallTimeout Milliseconds without progress before warning or 0 to never warn
+     */
+    public UploadProgressMonitor(
+            UploadProgress progress,
+            PrintStream logger,
+            UploadProgressReporter reporter,
+            long logInterval,
+            long stallTimeout)
+    {
+        this.progress = progress;
+        this.logger = logger;
+        this.reporter = reporter;
+        this.logInterval = logInterval;
+        this.stallTimeout = stallTimeout;
+    }
+
+    public synchronized void start() {
+        thread = new Thread(this, "UCD upload progress monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop sampling, then log and report the final sample
+     */
+    public void stop() {
+        stopped = true;
+        thread.interrupt();
+        try {
+            thread.join();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+
+        UploadSample sample = progress.sample();
+        logger.println(sample.getSummary());
+        report(sample, false, true);
+    }
+
+    @Override
+    public void run() {
+        long lastLog = System.currentTimeMillis();
+        long lastChange = lastLog;
+        long lastBytes = 0;
+        boolean stalled = false;
+
+        while (!stopped) {
+            try {
+                Thread.sleep(SAMPLE_INTERVAL);
+            }
+            catch (InterruptedException ex) {
+                break;
+            }
+
+            UploadSample sample = progress.sample();
+            long now = System.currentTimeMillis();
+
+            if (sample.getBytes() != lastBytes) {
+                if (stalled) {
+                    logger.println("Upload resumed.");
+                }
+                lastBytes = sample.getBytes();
+                lastChange = now;
+                stalled = false;
+            }
+            else if (stallTimeout > 0 && !stalled && now - lastChange >= stallTimeout) {
+                stalled = true;
+                logger.println("[Warning] No upload progress for " + (now - lastChange) / 1000
+                        + " seconds. The upload may be stalled.");
+            }
+
+            if (now - lastLog >= logInterval) {
+                logger.println(sample.getSummary());
+                lastLog = now;
+            }
+
+            report(sample, stalled, false);
+        }
+    }
+
+    private void report(UploadSample sample, boolean stalled, boolean finished) {
+        if (reporter != null) {
+            try {
+                reporter.report(sample, stalled, finished);
+            }
+            catch (RuntimeException ex) {
+                // progress display must never fail the upload
+                logger.println("[Warning] Failed to report upload progress: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+/**
+ * Receives upload progress samples. Implementations on the controller are exported to the
+ * agent channel so the agent can report progress while it uploads.
+ *
+ */
+public interface UploadProgressReporter {
+
+    /**
+     * Report a progress sample
+     *
+     * @param sample The latest sample
+     * @param stalled Whether no bytes were sent for longer than the stall timeout
+     * @param finished Whether the upload has ended
+     */
+    void report(UploadSample sample, boolean stalled, boolean finished);
+}
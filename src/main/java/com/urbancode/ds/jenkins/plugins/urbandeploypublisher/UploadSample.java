@@ -0,0 +1,117 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.Serializable;
+
+/**
+ * This class holds a sample of the progress of an upload
+ *
+ */
+public class UploadSample implements Serializable {
+
+    private static final long serialVersionUID = 4417608237702256181L;
+
+    final private int files;
+    final private int totalFiles;
+    final private long bytes;
+    final private long totalBytes;
+    final private long currentRate;
+    final private long averageRate;
+    final private long eta;
+
+    public UploadSample(
+            int files,
+            int totalFiles,
+            long bytes,
+            long totalBytes,
+            long currentRate,
+            long averageRate,
+            long eta)
+    {
+        this.files = files;
+        this.totalFiles = totalFiles;
+        this.bytes = bytes;
+        this.totalBytes = totalBytes;
+        this.currentRate = currentRate;
+        this.averageRate = averageRate;
+        this.eta = eta;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return The throughput in bytes per second since the previous sample
+     */
+    public long getCurrentRate() {
+        return currentRate;
+    }
+
+    /**
+     * @return The throughput in bytes per second since the upload started
+     */
+    public long getAverageRate() {
+        return averageRate;
+    }
+
+    /**
+     * @return The estimated seconds until the upload finishes or -1 if unknown
+     */
+    public long getEta() {
+        return eta;
+    }
+
+    public String getBytesText() {
+        return UploadProgress.formatBytes(bytes);
+    }
+
+    public String getTotalBytesText() {
+        return UploadProgress.formatBytes(totalBytes);
+    }
+
+    public String getCurrentRateText() {
+        return UploadProgress.formatBytes(currentRate) + "/s";
+    }
+
+    public String getAverageRateText() {
+        return UploadProgress.formatBytes(averageRate) + "/s";
+    }
+
+    public int getPercent() {
+        return totalBytes > 0 ? (int) (bytes * 100 / totalBytes) : 100;
+    }
+
+    public String getEtaText() {
+        if (eta < 0) {
+            return "unknown";
+        }
+        return String.format("%d:%02d:%02d", eta / 3600, (eta / 60) % 60, eta % 60);
+    }
+
+    /**
+     * @return A one line summary of the files and bytes sent, the throughput and the ETA
+     */
+    public String getSummary() {
+        return String.format("Uploaded %d of %d files, %s of %s (%d%%), current %s, average %s, ETA %s",
+                files, totalFiles, getBytesText(), getTotalBytesText(), getPercent(), getCurrentRateText(),
+                getAverageRateText(), getEtaText());
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.BuildListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.BuildStepMonitor;
+import hudson.tasks.Notifier;
+import hudson.tasks.Publisher;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+/**
+ * <p>
+ * This class waits for the publishes started in the background by
+ * {@link com.urbancode.ds.jenkins.plugins.urbandeploypublisher.UrbanDeployPublisher}
+ * and fails the build if any of them failed.
+ * </p>
+ */
+public class UrbanDeployAwaitPublisher extends Notifier {
+
+    @Extension
+    public static final DescriptorImpl DESCRIPTOR = new DescriptorImpl();
+
+    @DataBoundConstructor
+    public UrbanDeployAwaitPublisher() {
+    }
+
+    @Override
+    public BuildStepMonitor getRequiredMonitorService() {
+        return BuildStepMonitor.NONE;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @return whether or not the build can continue
+     * @throws AbortException if a background publish failed
+     * @throws InterruptedException
+     * @throws java.io.IOException {@inheritDoc}
+     */
+    @Override
+    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws AbortException, InterruptedException, IOException {
+        BackgroundPublishAction action = build.getAction(BackgroundPublishAction.class);
+
+        if (action == null) {
+            listener.getLogger().println("No IBM UrbanCode Deploy publishes are running in the background.");
+            return true;
+        }
+
+        List<String> failures = action.awaitAll(listener);
+
+        if (!failures.isEmpty()) {
+            throw new AbortException("Background publish to IBM UrbanCode Deploy failed for " + failures);
+        }
+
+        return true;
+    }
+
+    public static class DescriptorImpl extends BuildStepDescriptor<Publisher> {
+
+        public DescriptorImpl() {
+            super(UrbanDeployAwaitPublisher.class);
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Await IBM UrbanCode Deploy background publishes";
+        }
+
+        @Override
+        public String getHelpFile() {
+            return "/plugin/ibm-ucdeploy-publisher/help-await.html";
+        }
+
+        @Override
+        public boolean isApplicable(Class<? extends AbstractProject> jobType) {
+            return true;
+        }
+    }
+}
@@ -9,19 +9,36 @@ package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
 import hudson.AbortException;
 import hudson.EnvVars;
 import hudson.Extension;
+import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.BuildListener;
 import hudson.model.Result;
 import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Action;
+import hudson.model.Computer;
 import hudson.model.Hudson;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.util.Secret;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Date;
-
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * <p>
@@ -37,7 +54,14 @@ public class UrbanDeployPublisher extends Notifier {
     @Extension
     public static final UrbanDeployPublisherDescriptor DESCRIPTOR = new UrbanDeployPublisherDescriptor();
 
+    // milliseconds between deployment status checks
+    private static final long POLL_INTERVAL = 3000L;
+
+    // milliseconds between deployment status checks while waiting for a callback that may be lost
+    private static final long CALLBACK_FALLBACK_POLL_INTERVAL = 30000L;
+
     private String siteName;
+    private String additionalSites;
     private String altUser;
     private Secret altPassword;
     private String component;
@@ -55,9 +79,24 @@ public class UrbanDeployPublisher extends Notifier {
     private Boolean skipWait;
     private String deployReqProps;
     private String deployDesc;
-    private EnvVars envVars = null;
     private String properties;
     private String description;
+    private boolean reuseIdenticalVersion;
+    private boolean deployReusedVersion;
+    private boolean validateBeforeUpload;
+    private boolean uploadAsArchive;
+    private boolean compressArchive;
+    private boolean extractArchive;
+    private boolean publishInBackground;
+    private boolean uploadDuringBuild;
+    private boolean spoolWhenUnavailable;
+    private String artifactReferences;
+    private boolean deployCallback;
+    private boolean deployPublishedVersions;
+    private String deployVersions;
+    private boolean summarizeLog;
+    private boolean reportProgress;
+    private int stallTimeout;
 
     /**
      * Constructor used for data-binding fields from the corresponding
@@ -137,6 +176,19 @@ public class UrbanDeployPublisher extends Notifier {
         this.siteName = siteName;
     }
 
+    /**
+     * @param additionalSites The newline separated profile names of the other sites to publish the
+     *            same version to
+     */
+    @DataBoundSetter
+    public void setAdditionalSites(String additionalSites) {
+        this.additionalSites = additionalSites;
+    }
+
+    public String getAdditionalSites() {
+        return additionalSites;
+    }
+
     public String getAltUser() {
         return altUser;
     }
@@ -220,6 +272,134 @@ public class UrbanDeployPublisher extends Notifier {
         this.properties = properties;
     }
 
+    @DataBoundSetter
+    public void setReuseIdenticalVersion(boolean reuseIdenticalVersion) {
+        this.reuseIdenticalVersion = reuseIdenticalVersion;
+    }
+
+    public boolean isReuseIdenticalVersion() {
+        return reuseIdenticalVersion;
+    }
+
+    @DataBoundSetter
+    public void setDeployReusedVersion(boolean deployReusedVersion) {
+        this.deployReusedVersion = deployReusedVersion;
+    }
+
+    public boolean isDeployReusedVersion() {
+        return deployReusedVersion;
+    }
+
+    @DataBoundSetter
+    public void setUploadAsArchive(boolean uploadAsArchive) {
+        this.uploadAsArchive = uploadAsArchive;
+    }
+
+    public boolean isUploadAsArchive() {
+        return uploadAsArchive;
+    }
+
+    @DataBoundSetter
+    public void setCompressArchive(boolean compressArchive) {
+        this.compressArchive = compressArchive;
+    }
+
+    public boolean isCompressArchive() {
+        return compressArchive;
+    }
+
+    @DataBoundSetter
+    public void setExtractArchive(boolean extractArchive) {
+        this.extractArchive = extractArchive;
+    }
+
+    public boolean isExtractArchive() {
+        return extractArchive;
+    }
+
+    @DataBoundSetter
+    public void setPublishInBackground(boolean publishInBackground) {
+        this.publishInBackground = publishInBackground;
+    }
+
+    public boolean isPublishInBackground() {
+        return publishInBackground;
+    }
+
+    @DataBoundSetter
+    public void setUploadDuringBuild(boolean uploadDuringBuild) {
+        this.uploadDuringBuild = uploadDuringBuild;
+    }
+
+    public boolean isUploadDuringBuild() {
+        return uploadDuringBuild;
+    }
+
+    /**
+     * Archives and reused versions need the complete set of files, so only a plain upload
+     * of files to a new version can start before the build finished
+     *
+     * @return Whether files are uploaded while the build is running
+     */
+    boolean canUploadDuringBuild() {
+        return uploadDuringBuild && !skip && !uploadAsArchive && !reuseIdenticalVersion && !isReferenceOnly();
+    }
+
+    @DataBoundSetter
+    public void setSpoolWhenUnavailable(boolean spoolWhenUnavailable) {
+        this.spoolWhenUnavailable = spoolWhenUnavailable;
+    }
+
+    public boolean isSpoolWhenUnavailable() {
+        return spoolWhenUnavailable;
+    }
+
+    @DataBoundSetter
+    public void setArtifactReferences(String artifactReferences) {
+        this.artifactReferences = artifactReferences;
+    }
+
+    public String getArtifactReferences() {
+        return artifactReferences;
+    }
+
+    /**
+     * @return Whether the version references artifacts in a binary repository instead of uploading files
+     */
+    boolean isReferenceOnly() {
+        return artifactReferences != null && artifactReferences.trim().length() > 0;
+    }
+
+    @DataBoundSetter
+    public void setSummarizeLog(boolean summarizeLog) {
+        this.summarizeLog = summarizeLog;
+    }
+
+    public boolean isSummarizeLog() {
+        return summarizeLog;
+    }
+
+    @DataBoundSetter
+    public void setReportProgress(boolean reportProgress) {
+        this.reportProgress = reportProgress;
+    }
+
+    public boolean isReportProgress() {
+        return reportProgress;
+    }
+
+    /**
+     * @param stallTimeout Minutes without upload progress before warning, 0 to never warn
+     */
+    @DataBoundSetter
+    public void setStallTimeout(int stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    public int getStallTimeout() {
+        return stallTimeout;
+    }
+
     public void setSkip(boolean skip) {
         this.skip = skip;
     }
@@ -246,6 +426,42 @@ public class UrbanDeployPublisher extends Notifier {
 
     }
 
+    @DataBoundSetter
+    public void setValidateBeforeUpload(boolean validateBeforeUpload) {
+        this.validateBeforeUpload = validateBeforeUpload;
+    }
+
+    public boolean isValidateBeforeUpload() {
+        return validateBeforeUpload;
+    }
+
+    @DataBoundSetter
+    public void setDeployCallback(boolean deployCallback) {
+        this.deployCallback = deployCallback;
+    }
+
+    public boolean isDeployCallback() {
+        return deployCallback;
+    }
+
+    @DataBoundSetter
+    public void setDeployPublishedVersions(boolean deployPublishedVersions) {
+        this.deployPublishedVersions = deployPublishedVersions;
+    }
+
+    public boolean isDeployPublishedVersions() {
+        return deployPublishedVersions;
+    }
+
+    @DataBoundSetter
+    public void setDeployVersions(String deployVersions) {
+        this.deployVersions = deployVersions;
+    }
+
+    public String getDeployVersions() {
+        return deployVersions;
+    }
+
     public void setDeployApp(String deployApp) {
         this.deployApp = deployApp;
     }
@@ -301,8 +517,18 @@ public class UrbanDeployPublisher extends Notifier {
             return sites[0];
         }
 
-        for (UrbanDeploySite site : sites) {
-            if (site.getDisplayName().equals(siteName)) {
+        return getSite(siteName);
+    }
+
+    /**
+     * Obtain the configured UrbanDeploySite object with the given profile name
+     *
+     * @param name
+     * @return the matching UrbanDeploySite or null
+     */
+    private UrbanDeploySite getSite(String name) {
+        for (UrbanDeploySite site : DESCRIPTOR.getSites()) {
+            if (site.getDisplayName().equals(name)) {
                 return site;
             }
         }
@@ -311,15 +537,28 @@ public class UrbanDeployPublisher extends Notifier {
     }
 
     /**
-     * Ensures that the outcome of the previous build will be available
+     * Shows the publish performance trend on the job page
+     *
+     * @param project
+     * @return the trend graph action
+     */
+    @Override
+    public Action getProjectAction(AbstractProject<?, ?> project) {
+        return new PublishPerformanceProjectAction(project);
+    }
+
+    /**
+     * Lets concurrent builds publish without waiting for the previous build. Builds publishing the
+     * same component version take turns by {@link VersionLock}, and the deployment requests of a
+     * component are created in the order of {@link DeploymentOrder}.
      *
      * @return the setting for concurrent builds
      */
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
-        // BUILD means this step will only be run after the previous build is
-        // fully completed
-        return BuildStepMonitor.BUILD;
+        // NONE means this step does not depend on the outcome of the previous build,
+        // all per build state is kept in local variables
+        return BuildStepMonitor.NONE;
     }
 
     /**
@@ -336,19 +575,192 @@ public class UrbanDeployPublisher extends Notifier {
      *      hudson.model.BuildListener)
      */
     @Override
-    public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+    public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener)
             throws AbortException, InterruptedException, IOException {
 
         if (build.getResult() == Result.FAILURE || build.getResult() == Result.ABORTED) {
             throw new AbortException("Skip version deployment in IBM UrbanCode Deploy - build failed or aborted.");
         }
 
-        RestClientHelper clientHelper;
+        if (publishInBackground) {
+            BackgroundPublishAction action = build.getAction(BackgroundPublishAction.class);
+            if (action == null) {
+                action = new BackgroundPublishAction();
+                build.addAction(action);
+            }
+
+            // the build releases its workspace when it completes, so the publish reads a copy of the artifacts
+            EnvVars envVars = build.getEnvironment(listener);
+            EarlyUploadAction earlyUploads = build.getAction(EarlyUploadAction.class);
+            EarlyUploadAction.Session earlyUpload =
+                    earlyUploads != null ? earlyUploads.get(envVars.expand(component)) : null;
+            if (earlyUpload != null) {
+                // the watcher scans the workspace too, the publish only collects what it uploaded
+                earlyUpload.getUpload().stop();
+            }
+            final FilePath stageDir = skip || isReferenceOnly() ? null : stage(launcher, listener, envVars);
+
+            Future<Boolean> publish = Computer.threadPoolForRemoting.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    try {
+                        return publish(build, launcher, listener, stageDir);
+                    }
+                    finally {
+                        if (stageDir != null) {
+                            stageDir.deleteRecursive();
+                        }
+                    }
+                }
+            });
+
+            String name = "component " + envVars.expand(component) + " version " + envVars.expand(version);
+            action.add(name, publish);
+            listener.getLogger().println("Publishing " + name + " to IBM UrbanCode Deploy in the background. "
+                    + "The build waits for the result when it completes, or earlier at the 'Await IBM UrbanCode "
+                    + "Deploy background publishes' step.");
+            return true;
+        }
+
+        return publish(build, launcher, listener, null);
+    }
+
+    /**
+     * Copy the matched artifacts out of the workspace into a staging directory on the build node
+     *
+     * @param launcher
+     * @param listener
+     * @param envVars The environment of the build, used to resolve the configured values
+     * @return The staging directory
+     * @throws AbortException if the artifacts could not be copied
+     * @throws InterruptedException
+     */
+    private FilePath stage(Launcher launcher, BuildListener listener, EnvVars envVars)
+            throws AbortException, InterruptedException {
+        String stageDir;
+        try {
+            stageDir = launcher.getChannel().call(new StageArtifactsCallable(
+                    envVars.expand(baseDir),
+                    envVars.expand(directoryOffset),
+                    envVars.expand(fileIncludePatterns),
+                    envVars.expand(fileExcludePatterns)));
+        }
+        catch (IOException ex) {
+            throw new AbortException("Failed to stage artifacts for the background publish : " + ex.getMessage());
+        }
+        listener.getLogger().println("Staged artifacts for the background publish in " + stageDir);
+        return new FilePath(launcher.getChannel(), stageDir);
+    }
+
+    /**
+     * Publish the component version and run the deployment
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param stageDir The staged artifacts to publish instead of the workspace, or null
+     * @return whether or not the build can continue
+     * @throws AbortException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private boolean publish(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener,
+            FilePath stageDir) throws AbortException, InterruptedException, IOException {
         UrbanDeploySite udSite = getSite();
+        RestClientHelper clientHelper = createClientHelper(udSite, listener);
+
+        // resolved per build, the publisher instance is shared by concurrent builds of the job
+        EnvVars envVars = build.getEnvironment(listener);
+        String resolvedComponent = envVars.expand(component);
+
+        // concurrent publishes of the component, such as matrix axes, share their metadata lookups
+        PublishSession session = PublishSession.join(udSite.getDisplayName(), getAltUser(), resolvedComponent);
+        clientHelper.setSession(session);
+        if (session.getPublishes() > 1) {
+            listener.getLogger().println("Sharing metadata with " + (session.getPublishes() - 1)
+                    + " other publishes of component " + resolvedComponent + ".");
+        }
+
+        // deployment requests of the component are created in the order the builds reached this step
+        DeploymentOrder.Ticket deploymentTicket = DeploymentOrder.enter(udSite.getDisplayName(), resolvedComponent);
+
+        boolean succeeded = false;
+        try {
+            succeeded = publish(build, launcher, listener, clientHelper, envVars, deploymentTicket, stageDir);
+            return succeeded;
+        }
+        finally {
+            deploymentTicket.leave();
+            session.leave();
+
+            synchronized (build) {
+                PublishPerformanceAction performanceAction = build.getAction(PublishPerformanceAction.class);
+                if (performanceAction == null) {
+                    performanceAction = new PublishPerformanceAction();
+                    build.addAction(performanceAction);
+                }
+                performanceAction.add(PublishPerformance.fromSpans(
+                        resolvedComponent, clientHelper.getTracer().getSpansSince(0), succeeded));
+            }
+
+            try {
+                File traceFile = createBuildFile(build, "ucd-trace", resolvedComponent, envVars.expand(version),
+                        ".json");
+                clientHelper.getTracer().write(traceFile);
+            }
+            catch (IOException ex) {
+                listener.getLogger().println("[Warning] Failed to write trace file : " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Create a new file in the build directory named after a component version. Steps publishing
+     * the same component version in one build get numbered files instead of overwriting each other.
+     *
+     * @param build
+     * @param prefix
+     * @param component The resolved component name
+     * @param version The resolved version name
+     * @param suffix
+     * @return The created, empty file
+     * @throws IOException
+     */
+    private static File createBuildFile(AbstractBuild<?, ?> build, String prefix, String component, String version,
+            String suffix) throws IOException {
+        String name = prefix + "-" + Util.rawEncode(component) + "-" + Util.rawEncode(version);
+        File file = new File(build.getRootDir(), name + suffix);
+        for (int step = 2; !file.createNewFile(); step++) {
+            file = new File(build.getRootDir(), name + "-" + step + suffix);
+        }
+        return file;
+    }
+
+    /**
+     * Create a client for the preferred endpoint of the site, as the alternative user if one is set
+     *
+     * @param udSite
+     * @param listener
+     * @return The client
+     */
+    private RestClientHelper createClientHelper(UrbanDeploySite udSite, BuildListener listener) {
+        RestClientHelper clientHelper;
+        URI udSiteUri = udSite.getPreferredUri();
+
+        if (udSite.getEndpoints().size() > 1) {
+            EndpointHealth health = SiteHealthMonitor.getHealth(udSiteUri.toString());
+            if (health.getAverageLatency() >= 0) {
+                listener.getLogger().println("Using IBM UrbanCode Deploy endpoint " + udSiteUri
+                        + " (average latency " + Math.round(health.getAverageLatency()) + " ms).");
+            }
+            else {
+                listener.getLogger().println("Using IBM UrbanCode Deploy endpoint " + udSiteUri + ".");
+            }
+        }
 
         if (getAltUser().isEmpty()) {
             clientHelper = new RestClientHelper(
-                    udSite.getUri(),
+                    udSiteUri,
                     udSite, udSite.getUser(),
                     udSite.getPassword());
         }
@@ -356,67 +768,534 @@ public class UrbanDeployPublisher extends Notifier {
             listener.getLogger().println("Running job as alternative user '" + getAltUser() + "'.");
 
             clientHelper = new RestClientHelper(
-                    udSite.getUri(),
+                    udSiteUri,
                     udSite, getAltUser(),
                     getAltPassword());
         }
 
-        envVars = build.getEnvironment(listener); // used to resolve environment
-                                                  // variables in the build
-                                                  // environment
+        return clientHelper;
+    }
 
+    /**
+     * Create the component version and start uploading the files that are finished on the node
+     * of the build while the build is still running
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    void startEarlyUpload(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+            throws IOException, InterruptedException {
+        RestClientHelper clientHelper = createClientHelper(getSite(), listener);
+        EnvVars envVars = build.getEnvironment(listener);
         String resolvedComponent = envVars.expand(component);
         String resolvedVersion = envVars.expand(version);
 
-        if (skip) {
-            listener.getLogger().println("Skip artifacts upload to IBM UrbanCode Deploy - step disabled.");
-        }
-        else {
-            String resolvedBaseDir = envVars.expand(baseDir);
-            String resolvedFileIncludePatterns = envVars.expand(fileIncludePatterns);
-            String resolvedFileExcludePatterns = envVars.expand(fileExcludePatterns);
-            String resolvedDirectoryOffset = envVars.expand(directoryOffset);
-            String resolvedProperties = envVars.expand(properties);
-            String resolvedDescription = envVars.expand(description);
-
-            // create version and upload files
-            PublishArtifactsCallable task = new PublishArtifactsCallable(
+        listener.getLogger().println("Creating new version: " + resolvedVersion + " on component: "
+                + resolvedComponent + " to upload files during the build.");
+        UUID versionId = clientHelper.createComponentVersion(
+                resolvedVersion,
+                resolvedComponent,
+                envVars.expand(description));
+
+        EarlyUpload upload;
+        try {
+            upload = launcher.getChannel().call(new EarlyUploadCallable(
                     clientHelper,
-                    resolvedBaseDir,
-                    resolvedDirectoryOffset,
-                    resolvedFileIncludePatterns,
-                    resolvedFileExcludePatterns,
+                    envVars.expand(baseDir),
+                    envVars.expand(directoryOffset),
+                    envVars.expand(fileIncludePatterns),
+                    envVars.expand(fileExcludePatterns),
                     resolvedComponent,
                     resolvedVersion,
-                    resolvedDescription,
-                    listener);
+                    listener));
+        }
+        catch (IOException ex) {
+            VersionCleanupQueue.get().enqueue(getSite().getDisplayName(), getAltUser(), getAltPassword(),
+                    versionId, resolvedComponent, resolvedVersion);
+            throw ex;
+        }
 
-            // task must run on the correct channel
-            listener.getLogger().println(launcher.getChannel().toString());
-            task.callOnChannel(launcher.getChannel());
+        EarlyUploadAction action;
+        synchronized (build) {
+            action = build.getAction(EarlyUploadAction.class);
+            if (action == null) {
+                action = new EarlyUploadAction();
+                build.addAction(action);
+            }
+        }
+        action.add(resolvedComponent, new EarlyUploadAction.Session(this, upload, versionId, resolvedVersion));
+        listener.getLogger().println("Uploading finished files of component " + resolvedComponent
+                + " during the build.");
+    }
+
+    /**
+     * Log the outcome of the publish to every additional site, add the version properties and
+     * build link to the versions published there, and queue the deletion of incomplete versions.
+     * A failed site marks the build unstable without affecting the other sites.
+     *
+     * @param build
+     * @param listener
+     * @param result The outcome of the publish
+     * @param siteHelpers The clients of the additional sites by profile name
+     * @param resolvedComponent
+     * @param resolvedVersion The requested version name
+     * @param resolvedProperties The version properties to set
+     */
+    private void completeAdditionalSites(AbstractBuild<?, ?> build, BuildListener listener, PublishResult result,
+            Map<String, RestClientHelper> siteHelpers, String resolvedComponent, String resolvedVersion,
+            String resolvedProperties) {
+        for (PublishResult.SiteResult siteResult : result.getAdditionalSites()) {
+            String name = siteResult.getSiteName();
+            String failure = siteResult.getError();
+
+            if (!siteResult.isFailed()) {
+                RestClientHelper siteHelper = siteHelpers.get(name);
+                try {
+                    // an identical reused version keeps its own properties and links
+                    if (siteResult.getVersion().equals(resolvedVersion)) {
+                        if (resolvedProperties.length() > 0) {
+                            siteHelper.setComponentVersionProperties(resolvedComponent, resolvedVersion,
+                                    resolvedProperties, listener);
+                        }
+                        siteHelper.addLinkToComp(resolvedComponent, resolvedVersion,
+                                "Jenkins Job " + build.getDisplayName(),
+                                Hudson.getInstance().getRootUrl() + build.getUrl());
+                    }
+                    listener.getLogger().println("Published component " + resolvedComponent + " version "
+                            + siteResult.getVersion() + " to '" + name + "'.");
+                }
+                catch (AbortException ex) {
+                    failure = ex.getMessage();
+                }
+            }
+            else if (siteResult.getFailedVersionId() != null) {
+                listener.getLogger().println("Queueing deletion of component version '" + resolvedVersion
+                        + "' on '" + name + "' due to failed artifact upload.");
+                try {
+                    VersionCleanupQueue.get().enqueue(name, getAltUser(), getAltPassword(),
+                            siteResult.getFailedVersionId(), resolvedComponent, resolvedVersion);
+                }
+                catch (IOException ex) {
+                    listener.error("Failed to queue deletion of component version : " + ex.getMessage());
+                }
+            }
 
-            // create properties on version
-            if (resolvedProperties.length() > 0) {
-                clientHelper.setComponentVersionProperties(resolvedComponent,
-                                                           resolvedVersion,
-                                                           resolvedProperties,
-                                                           listener);
+            if (failure != null) {
+                listener.error("Publishing component " + resolvedComponent + " version " + resolvedVersion
+                        + " to '" + name + "' failed : " + failure);
+                build.setResult(Result.UNSTABLE);
             }
+        }
+    }
 
-            // add component version link
-            String linkName = "Jenkins Job " + build.getDisplayName();
-            String linkUrl = Hudson.getInstance().getRootUrl() + build.getUrl();
-            listener.getLogger().println("Adding Jenkins job link " + linkUrl);
+    /**
+     * Create a component version that references artifacts in a binary repository. Only a manifest
+     * with the location, size and checksum of every artifact is uploaded, which is also kept with the build.
+     * The references are resolved once and the same manifest is uploaded to every additional site.
+     *
+     * @param build
+     * @param listener
+     * @param clientHelper
+     * @param siteHelpers The clients of the additional sites by profile name
+     * @param resolvedComponent
+     * @param resolvedVersion
+     * @param resolvedDescription
+     * @param resolvedReferences The newline separated artifact references
+     * @return The outcome of the publish, with the outcome of every additional site
+     * @throws AbortException if an artifact could not be resolved or the version could not be created
+     *         on the selected site
+     */
+    private PublishResult publishReferences(AbstractBuild<?, ?> build, BuildListener listener,
+            RestClientHelper clientHelper, Map<String, RestClientHelper> siteHelpers, String resolvedComponent,
+            String resolvedVersion, String resolvedDescription, String resolvedReferences)
+            throws AbortException {
+        ArtifactReferences references = ArtifactReferences.parse(resolvedReferences);
+        File manifestDir = new File(build.getRootDir(), "ucd-references-" + Util.rawEncode(resolvedComponent));
+
+        listener.getLogger().println("Resolving " + references.size() + " artifact references of component "
+                + resolvedComponent);
+        try {
+            references.resolve(listener.getLogger());
+            references.writeManifest(new File(manifestDir, ArtifactReferences.MANIFEST_NAME));
+        }
+        catch (IOException ex) {
+            throw new AbortException("Failed to resolve artifact references : " + ex.getMessage());
+        }
+
+        UUID versionId = clientHelper.createComponentVersion(resolvedVersion, resolvedComponent, resolvedDescription);
+        try {
+            uploadManifest(clientHelper, manifestDir, resolvedComponent, resolvedVersion);
+        }
+        catch (AbortException ex) {
+            listener.getLogger().println("Queueing deletion of component version '" + resolvedVersion
+                    + "' due to failed manifest upload.");
             try {
-                clientHelper.addLinkToComp(resolvedComponent, resolvedVersion, linkName, linkUrl);
-            } catch (Exception ex){
-                // If link cannot be added to the component version, the entire import shouldn't crash
-                listener.getLogger().println("[Warning] " +  ex.getMessage());
-                listener.getLogger().println("\t View the server logs for a complete stack trace.");
+                VersionCleanupQueue.get().enqueue(getSite().getDisplayName(), getAltUser(), getAltPassword(),
+                        versionId, resolvedComponent, resolvedVersion);
+            }
+            catch (IOException e) {
+                listener.error("Failed to queue deletion of component version : " + e.getMessage());
+            }
+            throw ex;
+        }
+
+        listener.getLogger().println("Created component version '" + resolvedVersion + "' referencing "
+                + references.size() + " artifacts of " + references.getTotalSize() + " bytes without uploading them.");
+
+        // every additional site succeeds or fails on its own, as when publishing files
+        List<PublishResult.SiteResult> siteResults = new ArrayList<PublishResult.SiteResult>();
+        for (Map.Entry<String, RestClientHelper> site : siteHelpers.entrySet()) {
+            UUID siteVersionId = null;
+            try {
+                siteVersionId = site.getValue().createComponentVersion(resolvedVersion, resolvedComponent,
+                        resolvedDescription);
+                uploadManifest(site.getValue(), manifestDir, resolvedComponent, resolvedVersion);
+                siteResults.add(new PublishResult.SiteResult(site.getKey(), resolvedVersion, null, null));
+            }
+            catch (AbortException ex) {
+                siteResults.add(new PublishResult.SiteResult(site.getKey(), null, siteVersionId, ex.getMessage()));
+            }
+        }
+
+        return new PublishResult(resolvedVersion, new ArrayList<TraceSpan>(), siteResults, null);
+    }
+
+    private static void uploadManifest(RestClientHelper clientHelper, File manifestDir, String resolvedComponent,
+            String resolvedVersion) throws AbortException {
+        clientHelper.uploadVersionFiles(manifestDir, resolvedComponent, resolvedVersion,
+                new String[] {ArtifactReferences.MANIFEST_NAME}, new String[0], false);
+    }
+
+    /**
+     * Stage the artifacts and metadata of the component version in the spool to be published
+     * once the server is available again. The deployment of the version is skipped.
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param envVars The environment of the build, used to resolve the configured values
+     * @param stageDir The staged artifacts to spool instead of the workspace, or null
+     * @param reason Why the version is not published now
+     * @return whether or not the build can continue
+     * @throws AbortException if the version could not be spooled
+     * @throws InterruptedException
+     */
+    private boolean spool(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener, EnvVars envVars,
+            FilePath stageDir, String reason) throws AbortException, InterruptedException {
+        String resolvedComponent = envVars.expand(component);
+        String resolvedVersion = envVars.expand(version);
+        String resolvedDirectoryOffset = envVars.expand(directoryOffset);
+
+        FilePath workDir = stageDir;
+        if (workDir == null) {
+            workDir = new FilePath(launcher.getChannel(), envVars.expand(baseDir));
+            if (resolvedDirectoryOffset != null && resolvedDirectoryOffset.trim().length() > 0) {
+                workDir = workDir.child(resolvedDirectoryOffset.trim());
             }
         }
 
+        PublishSpool.Entry entry = new PublishSpool.Entry(
+                getSite().getDisplayName(),
+                getAltUser(),
+                getAltPassword(),
+                resolvedComponent,
+                resolvedVersion,
+                envVars.expand(description),
+                envVars.expand(properties),
+                "Jenkins Job " + build.getDisplayName(),
+                Hudson.getInstance().getRootUrl() + build.getUrl());
+
+        int files;
+        try {
+            files = PublishSpool.get().spool(
+                    workDir,
+                    envVars.expand(fileIncludePatterns),
+                    envVars.expand(fileExcludePatterns),
+                    entry);
+        }
+        catch (IOException ex) {
+            throw new AbortException(reason + " Failed to spool version '" + resolvedVersion + "' : "
+                    + ex.getMessage());
+        }
+
+        listener.getLogger().println("[Warning] " + reason);
+        listener.getLogger().println("[Warning] Spooled " + files + " files of component " + resolvedComponent
+                + " version " + resolvedVersion + " on the controller. The version is published in the "
+                + "background once IBM UrbanCode Deploy is available again.");
         if (deploy) {
+            listener.getLogger().println("[Warning] Skipping the deployment of the spooled version.");
+        }
+        return true;
+    }
+
+    /**
+     * Publish the component version and run the deployment with the given client
+     *
+     * @param build
+     * @param launcher
+     * @param listener
+     * @param clientHelper
+     * @param envVars The environment of the build, used to resolve the configured values
+     * @param deploymentTicket The place of this publish in the deployment order of the component
+     * @param stageDir The staged artifacts to publish instead of the workspace, or null
+     * @return whether or not the build can continue
+     * @throws AbortException
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private boolean publish(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener,
+            RestClientHelper clientHelper, EnvVars envVars, DeploymentOrder.Ticket deploymentTicket,
+            FilePath stageDir)
+            throws AbortException, InterruptedException, IOException {
+        String resolvedComponent = envVars.expand(component);
+        String resolvedVersion = envVars.expand(version);
+
+        EarlyUploadAction earlyUploads = build.getAction(EarlyUploadAction.class);
+        boolean uploadedDuringBuild = earlyUploads != null && earlyUploads.isStarted(resolvedComponent);
+
+        // referenced artifacts are not in the workspace, so there is nothing to stage
+        if (spoolWhenUnavailable && !skip && !isReferenceOnly()) {
+            String siteName = getSite().getDisplayName();
+            if (PublishSpool.get().hasPending(siteName, resolvedComponent)) {
+                // a direct publish would overtake the spooled versions of the component
+                return spool(build, launcher, listener, envVars, stageDir, "Earlier publishes of component "
+                        + resolvedComponent + " to '" + siteName + "' are waiting in the spool.");
+            }
+            if (!PublishSpool.isAvailable(getSite())) {
+                return spool(build, launcher, listener, envVars, stageDir, "IBM UrbanCode Deploy site '" + siteName
+                        + "' is unavailable.");
+            }
+        }
+
+        if (validateBeforeUpload) {
+            // fail within seconds on a configuration error instead of after the upload
+            PreflightCheck preflight = new PreflightCheck(clientHelper).credentials().component(resolvedComponent);
+            if (skip) {
+                preflight.existingVersion(resolvedComponent, resolvedVersion);
+            }
+            else if (!reuseIdenticalVersion && !uploadedDuringBuild) {
+                // a reused version may legitimately carry the configured name already
+                preflight.newVersion(resolvedComponent, resolvedVersion);
+            }
+            if (deploy) {
+                preflight.deployment(
+                        envVars.expand(deployApp),
+                        envVars.expand(deployEnv),
+                        envVars.expand(deployProc),
+                        envVars.expand(deployReqProps));
+            }
+
+            listener.getLogger().println("Validating configuration against IBM UrbanCode Deploy before upload");
+            TraceSpan span = clientHelper.getTracer().start("preflight");
+            try {
+                preflight.run(Computer.threadPoolForRemoting, listener);
+            }
+            catch (AbortException ex) {
+                span.fail(ex);
+                throw ex;
+            }
+            finally {
+                clientHelper.getTracer().end(span);
+            }
+        }
+
+        // whether an identical earlier version was used instead of publishing a new one
+        boolean reused = false;
+
+        // concurrent builds publishing the same version take turns until it is created and uploaded
+        VersionLock versionLock = null;
+        try {
+            if (skip) {
+                listener.getLogger().println("Skip artifacts upload to IBM UrbanCode Deploy - step disabled.");
+            }
+            else {
+                versionLock = VersionLock.acquire(getSite().getDisplayName(), resolvedComponent, resolvedVersion,
+                        listener);
+                // the staged artifacts are already below the offset
+                String resolvedBaseDir = stageDir != null ? stageDir.getRemote() : envVars.expand(baseDir);
+                String resolvedFileIncludePatterns = envVars.expand(fileIncludePatterns);
+                String resolvedFileExcludePatterns = envVars.expand(fileExcludePatterns);
+                String resolvedDirectoryOffset = stageDir != null ? null : envVars.expand(directoryOffset);
+                String resolvedProperties = envVars.expand(properties);
+                String resolvedDescription = envVars.expand(description);
+
+                Map<String, RestClientHelper> siteHelpers = new LinkedHashMap<String, RestClientHelper>();
+                if (additionalSites != null) {
+                    for (String additionalSiteName : RestClientHelper.splitFiles(envVars.expand(additionalSites))) {
+                        UrbanDeploySite additionalSite = getSite(additionalSiteName);
+                        if (additionalSite == null) {
+                            throw new AbortException("IBM UrbanCode Deploy server '" + additionalSiteName
+                                    + "' is not configured.");
+                        }
+                        if (additionalSite != getSite() && !siteHelpers.containsKey(additionalSite.getDisplayName())) {
+                            siteHelpers.put(additionalSite.getDisplayName(), createClientHelper(additionalSite, listener));
+                        }
+                    }
+                }
+
+                String publishedVersion;
+                if (isReferenceOnly()) {
+                    PublishResult result = publishReferences(build, listener, clientHelper, siteHelpers,
+                            resolvedComponent, resolvedVersion, resolvedDescription, envVars.expand(artifactReferences));
+                    completeAdditionalSites(build, listener, result, siteHelpers, resolvedComponent, resolvedVersion,
+                            resolvedProperties);
+                    publishedVersion = result.getVersion();
+                }
+                else {
+                    FilePath fileListing = null;
+                    if (summarizeLog) {
+                        fileListing = new FilePath(
+                                new File(build.getRootDir(), "ucd-files-" + Util.rawEncode(resolvedComponent) + ".txt.gz"));
+                    }
+
+                    UploadProgressReporter progressReporter = null;
+                    if (reportProgress) {
+                        UploadProgressAction progressAction = new UploadProgressAction(resolvedComponent);
+                        build.addAction(progressAction);
+                        // the agent reports progress through a proxy of the action
+                        progressReporter = launcher.getChannel().export(UploadProgressReporter.class, progressAction);
+                    }
+
+                    EarlyUploadAction.Session earlyUpload =
+                            uploadedDuringBuild ? earlyUploads.claim(resolvedComponent) : null;
+                    Map<String, String> earlyUploaded = null;
+                    if (earlyUpload != null) {
+                        // the version was created during the build, possibly with a name resolved differently
+                        resolvedVersion = earlyUpload.getVersion();
+                        try {
+                            earlyUploaded = earlyUpload.getUpload().stop();
+                        }
+                        catch (IOException ex) {
+                            listener.getLogger().println("[Warning] Could not stop the upload started during the build, "
+                                    + "uploading all files: " + ex.getMessage());
+                            earlyUploaded = new HashMap<String, String>();
+                        }
+                        listener.getLogger().println(earlyUploaded.size() + " files of component " + resolvedComponent
+                                + " were uploaded during the build.");
+                    }
+
+                    // create version and upload files
+                    PublishArtifactsCallable task = new PublishArtifactsCallable(
+                            clientHelper,
+                            resolvedBaseDir,
+                            resolvedDirectoryOffset,
+                            resolvedFileIncludePatterns,
+                            resolvedFileExcludePatterns,
+                            resolvedComponent,
+                            resolvedVersion,
+                            resolvedDescription,
+                            reuseIdenticalVersion,
+                            uploadAsArchive,
+                            compressArchive,
+                            extractArchive,
+                            fileListing,
+                            progressReporter,
+                            stallTimeout * 60 * 1000L,
+                            listener);
+
+                    if (earlyUpload != null) {
+                        task.resumeEarlyUpload(earlyUpload.getVersionId(), earlyUploaded);
+                    }
+
+                    // the same content is published to the additional sites, scanned once on the node
+                    for (Map.Entry<String, RestClientHelper> siteHelper : siteHelpers.entrySet()) {
+                        task.addSite(siteHelper.getKey(), siteHelper.getValue());
+                    }
+
+                    // task must run on the correct channel
+                    listener.getLogger().println(launcher.getChannel().toString());
+                    PublishResult result;
+                    try {
+                        result = task.callOnChannel(launcher.getChannel());
+                        completeAdditionalSites(build, listener, result, siteHelpers, resolvedComponent, resolvedVersion,
+                                resolvedProperties);
+                        result.checkFailure();
+                    }
+                    catch (AbortException ex) {
+                        if (ex instanceof FailedVersionException) {
+                            listener.getLogger().println("Queueing deletion of component version '" + resolvedVersion
+                                    + "' due to failed artifact upload.");
+                            try {
+                                VersionCleanupQueue.get().enqueue(getSite().getDisplayName(), getAltUser(),
+                                        getAltPassword(), ((FailedVersionException) ex).getVersionId(), resolvedComponent,
+                                        resolvedVersion);
+                            }
+                            catch (IOException e) {
+                                listener.error("Failed to queue deletion of component version : " + e.getMessage());
+                            }
+                        }
+                        // only a server that stopped answering is worth waiting for, a rejected publish fails the build
+                        if (spoolWhenUnavailable && !PublishSpool.isAvailable(getSite())) {
+                            return spool(build, launcher, listener, envVars, stageDir, "Publishing failed and IBM "
+                                    + "UrbanCode Deploy site '" + getSite().getDisplayName() + "' is unavailable: "
+                                    + ex.getMessage());
+                        }
+                        throw ex;
+                    }
+                    clientHelper.getTracer().merge(result.getSpans());
+                    publishedVersion = result.getVersion();
+                }
+                reused = !publishedVersion.equals(resolvedVersion);
+                resolvedVersion = publishedVersion;
+
+                if (reused) {
+                    // the version belongs to the build that published it, its properties and links stay unchanged
+                    listener.getLogger().println("Leaving the properties and links of reused version "
+                            + resolvedVersion + " unchanged.");
+                }
+                else {
+                    // create properties on version
+                    if (resolvedProperties.length() > 0) {
+                        clientHelper.setComponentVersionProperties(resolvedComponent,
+                                                                   resolvedVersion,
+                                                                   resolvedProperties,
+                                                                   listener);
+                    }
+
+                    // add component version link
+                    String linkName = "Jenkins Job " + build.getDisplayName();
+                    String linkUrl = Hudson.getInstance().getRootUrl() + build.getUrl();
+                    listener.getLogger().println("Adding Jenkins job link " + linkUrl);
+                    try {
+                        clientHelper.addLinkToComp(resolvedComponent, resolvedVersion, linkName, linkUrl);
+                    } catch (Exception ex){
+                        // If link cannot be added to the component version, the entire import shouldn't crash
+                        listener.getLogger().println("[Warning] " +  ex.getMessage());
+                        listener.getLogger().println("\t View the server logs for a complete stack trace.");
+                    }
+                }
+            }
+        }
+        finally {
+            if (versionLock != null) {
+                versionLock.release();
+            }
+        }
+
+        // a reused version is only deployed, now or by a later step of the build, when that is enabled
+        if (!skip && (!reused || deployReusedVersion)) {
+            // remember the version so a later step of this build can deploy it together with its own
+            synchronized (build) {
+                PublishedVersionsAction publishedVersions = build.getAction(PublishedVersionsAction.class);
+                if (publishedVersions == null) {
+                    publishedVersions = new PublishedVersionsAction();
+                    build.addAction(publishedVersions);
+                }
+                publishedVersions.record(resolvedComponent, resolvedVersion);
+            }
+        }
+
+        if (deploy && reused && !deployReusedVersion) {
+            listener.getLogger().println("Skip deploy application to IBM UrbanCode Deploy - no new version was "
+                    + "published and 'Deploy Reused Version' is not selected.");
+        }
+        else if (deploy && !deploymentTicket.awaitTurn(resolvedVersion, listener)) {
+            // a later build deployed a newer version of the component, deploying this one would roll it back
+        }
+        else if (deploy) {
             String resolvedDeployApp = envVars.expand(deployApp);
             String resolvedDeployEnv = envVars.expand(deployEnv);
             String resolvedDeployProc = envVars.expand(deployProc);
@@ -433,69 +1312,192 @@ public class UrbanDeployPublisher extends Notifier {
                 throw new AbortException("Deploy Process is a required field if Deploy is selected.");
             }
 
-            listener.getLogger().println("Starting deployment process " + resolvedDeployProc + " of application "
-                    + deployApp + " in environment " + resolvedDeployEnv);
+            // register for a completion callback before the request exists so UCD can be told where to send it
+            DeploymentCallbackAction.Waiter waiter = null;
 
-            String requestId = clientHelper.createDefaultProcessRequest(
-                    resolvedDeployApp,
-                    resolvedDeployEnv,
-                    resolvedDeployProc,
-                    resolvedDeployDesc,
-                    resolvedDeployReqProps,
-                    resolvedComponent,
-                    resolvedVersion,
-                    listener);
-
-            listener.getLogger().println("Deployment request created with id: " + requestId);
-            listener.getLogger().println("Deployment of application request " + requestId
-                    + " of application " + resolvedDeployApp + " is running.");
-            long startTime = new Date().getTime();
-
-            boolean processFinished = false;
-            String deploymentResult = "";
-
-            /* Wait for process to finish unless skipping the wait */
-            if (!skipWait) {
-                while (!processFinished) {
-                    deploymentResult = clientHelper.checkDeploymentProcessResult(requestId);
-
-                if (!deploymentResult.equalsIgnoreCase("NONE")
-                        && !deploymentResult.isEmpty()
-                        && !deploymentResult.equalsIgnoreCase("SCHEDULED FOR FUTURE")) {
-                    processFinished = true;
+            if (deployCallback && !skipWait) {
+                String rootUrl = Hudson.getInstance().getRootUrl();
+                if (rootUrl == null) {
+                    listener.getLogger().println("[Warning] The Jenkins URL is not configured. Polling for the "
+                            + "deployment result instead of waiting for a callback.");
+                }
+                else {
+                    waiter = DeploymentCallbackAction.register();
+                    String callbackUrl = rootUrl + waiter.getUrl();
+                    if (resolvedDeployReqProps.length() > 0) {
+                        resolvedDeployReqProps = resolvedDeployReqProps + "\n";
+                    }
+                    resolvedDeployReqProps = resolvedDeployReqProps
+                            + DeploymentCallbackAction.CALLBACK_PROPERTY + "=" + callbackUrl;
+                    listener.getLogger().println("Waiting for deployment callback on " + callbackUrl);
+                }
+            }
 
-                    if (deploymentResult.equalsIgnoreCase("FAULTED")
-                            || deploymentResult.equalsIgnoreCase("FAILED TO START")) {
-                        throw new AbortException("Deployment process failed with result " + deploymentResult);
-                 }
-              }
+            try {
+                listener.getLogger().println("Starting deployment process " + resolvedDeployProc + " of application "
+                        + deployApp + " in environment " + resolvedDeployEnv);
+
+                Map<String, List<String>> compVersions = getDeployedVersions(
+                        build,
+                        resolvedComponent,
+                        resolvedVersion,
+                        envVars.expand(deployVersions));
+
+                for (Map.Entry<String, List<String>> compVersion : compVersions.entrySet()) {
+                    listener.getLogger().println("Deploying component " + compVersion.getKey() + " version "
+                            + StringUtils.join(compVersion.getValue(), ", "));
+                }
 
-                    // give application process more time to complete
+                String requestId = clientHelper.createDefaultProcessRequest(
+                        resolvedDeployApp,
+                        resolvedDeployEnv,
+                        resolvedDeployProc,
+                        resolvedDeployDesc,
+                        resolvedDeployReqProps,
+                        compVersions,
+                        listener);
+                deploymentTicket.requested(resolvedVersion);
+
+                listener.getLogger().println("Deployment request created with id: " + requestId);
+                listener.getLogger().println("Deployment of application request " + requestId
+                        + " of application " + resolvedDeployApp + " is running.");
+                long startTime = new Date().getTime();
+
+                boolean processFinished = false;
+                String deploymentResult = "";
+
+                /* Wait for process to finish unless skipping the wait */
+                if (!skipWait) {
+                    Tracer tracer = clientHelper.getTracer();
+                    TraceSpan span = tracer.start("deploymentWait").attribute("requestId", requestId);
+                    // the status is checked by a poller shared with the other builds waiting for deployments,
+                    // while waiting for a callback only rarely in case the callback is lost
+                    DeploymentStatusPoller.Request request = DeploymentStatusPoller.watch(clientHelper, requestId,
+                            waiter != null ? CALLBACK_FALLBACK_POLL_INTERVAL : POLL_INTERVAL);
+                    boolean callbackReceived = false;
                     try {
-                        Thread.sleep(3000);
+                        while (!processFinished) {
+                            try {
+                                if (waiter == null || callbackReceived) {
+                                    deploymentResult = request.awaitResult(POLL_INTERVAL);
+                                }
+                                else if (waiter.await(POLL_INTERVAL)) {
+                                    // once the callback arrived the result is due, so it is polled at the normal interval
+                                    listener.getLogger().println("Received deployment callback.");
+                                    callbackReceived = true;
+                                    request.checkNow(POLL_INTERVAL);
+                                    deploymentResult = request.awaitResult(POLL_INTERVAL);
+                                }
+                                else {
+                                    deploymentResult = request.getResult();
+                                }
+                            }
+                            catch (InterruptedException ex) {
+                                throw new AbortException(
+                                    "Could not wait to check deployment result: " + ex.getMessage());
+                            }
+
+                            if (DeploymentStatusPoller.isFinished(deploymentResult)) {
+                                processFinished = true;
+
+                                if (deploymentResult.equalsIgnoreCase("FAULTED")
+                                        || deploymentResult.equalsIgnoreCase("FAILED TO START")) {
+                                    throw new AbortException("Deployment process failed with result " + deploymentResult);
+                                }
+                            }
+                        }
+                        span.attribute("result", deploymentResult);
+                    }
+                    catch (AbortException ex) {
+                        span.fail(ex);
+                        throw ex;
                     }
-                    catch (InterruptedException ex) {
-                        throw new AbortException(
-                            "Could not wait to check deployment result: " + ex.getMessage());
+                    finally {
+                        request.close();
+                        tracer.end(span);
                     }
                 }
-            }
-            else {
-                listener.getLogger().println("'Skip Wait' option selected. Returning immmediately " + "without waiting for the UCD process to complete.");
+                else {
+                    listener.getLogger().println("'Skip Wait' option selected. Returning immmediately " + "without waiting for the UCD process to complete.");
 
-            }
+                }
 
-            long duration = (new Date().getTime() - startTime) / 1000;
+                long duration = (new Date().getTime() - startTime) / 1000;
 
-            listener.getLogger().println("Finished deployment of application request " + requestId
-                    + " for application " + resolvedDeployApp + " in environment " + resolvedDeployEnv
-                    + " in " + duration + " seconds");
-            listener.getLogger().println("The deployment " + deploymentResult
-                    + ". See the UrbanCode Deploy deployment logs for details.");
+                listener.getLogger().println("Finished deployment of application request " + requestId
+                        + " for application " + resolvedDeployApp + " in environment " + resolvedDeployEnv
+                        + " in " + duration + " seconds");
+                listener.getLogger().println("The deployment " + deploymentResult
+                        + ". See the UrbanCode Deploy deployment logs for details.");
+            }
+            finally {
+                if (waiter != null) {
+                    waiter.close();
+                }
+            }
         }
         else {
             listener.getLogger().println("Skip deploy application to IBM UrbanCode Deploy - step disabled.");
         }
         return true;
     }
+
+    /**
+     * Collect the component versions to deploy in one application process request
+     *
+     * @param build
+     * @param component The component of this step
+     * @param version The version of this step
+     * @param additionalVersions Newline separated component=version pairs
+     * @return The versions to deploy by component name, in request order
+     * @throws AbortException
+     */
+    private Map<String, List<String>> getDeployedVersions(
+            AbstractBuild<?, ?> build,
+            String component,
+            String version,
+            String additionalVersions)
+    throws AbortException {
+        Map<String, List<String>> compVersions = new LinkedHashMap<String, List<String>>();
+
+        if (deployPublishedVersions) {
+            PublishedVersionsAction publishedVersions = build.getAction(PublishedVersionsAction.class);
+            if (publishedVersions != null) {
+                for (Map.Entry<String, String> published : publishedVersions.getVersions().entrySet()) {
+                    addDeployedVersion(compVersions, published.getKey(), published.getValue());
+                }
+            }
+        }
+
+        if (additionalVersions != null) {
+            for (String line : additionalVersions.split("\n")) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+
+                String[] compVersion = line.split("=", 2);
+                if (compVersion.length < 2 || compVersion[0].trim().length() == 0
+                        || compVersion[1].trim().length() == 0) {
+                    throw new AbortException("Expected component=version in deploy versions but found '"
+                            + line.trim() + "'");
+                }
+                addDeployedVersion(compVersions, compVersion[0].trim(), compVersion[1].trim());
+            }
+        }
+
+        addDeployedVersion(compVersions, component, version);
+
+        return compVersions;
+    }
+
+    private void addDeployedVersion(Map<String, List<String>> compVersions, String component, String version) {
+        List<String> versions = compVersions.get(component);
+        if (versions == null) {
+            versions = new ArrayList<String>();
+            compVersions.put(component, versions);
+        }
+        if (!versions.contains(version)) {
+            versions.add(version);
+        }
+    }
 }
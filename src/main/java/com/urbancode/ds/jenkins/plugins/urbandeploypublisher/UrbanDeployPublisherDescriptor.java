@@ -100,24 +100,30 @@ public class UrbanDeployPublisherDescriptor extends BuildStepDescriptor<Publishe
      * @param req
      * @param rsp
      * @param url
+     * @param alternateUrls
      * @param user
      * @param password
      * @param trustAllCerts
+     * @param asyncTransport
      * @throws IOException
      * @throws ServletException
      * @deprecated FormFieldValidator
      */
     @Deprecated
     public void doTestConnection(StaplerRequest req, StaplerResponse rsp, @QueryParameter("url") final String url,
+                                 @QueryParameter("alternateUrls") final String alternateUrls,
                                  @QueryParameter("user") final String user,
                                  @QueryParameter("password") final String password,
-                                 @QueryParameter("trustAllCerts") final boolean trustAllCerts)
+                                 @QueryParameter("trustAllCerts") final boolean trustAllCerts,
+                                 @QueryParameter("asyncTransport") final boolean asyncTransport)
     throws IOException, ServletException {
         new FormFieldValidator(req, rsp, true) {
             protected void check()
                     throws IOException, ServletException {
                 try {
                     UrbanDeploySite site = new UrbanDeploySite(null, url, user, password, trustAllCerts);
+                    site.setAlternateUrls(alternateUrls);
+                    site.setAsyncTransport(asyncTransport);
                     site.verifyConnection();
                     ok("Success");
                 }
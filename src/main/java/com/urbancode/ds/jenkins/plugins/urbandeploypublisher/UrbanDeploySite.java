@@ -18,6 +18,9 @@ import java.io.Reader;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import javax.ws.rs.core.UriBuilder;
 
@@ -26,7 +29,9 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.HttpResponse;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpConnectionParams;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  * This class creates an HttpClient for running UCD rest commands
@@ -41,12 +46,18 @@ public class UrbanDeploySite implements Serializable {
 
     private String url;
 
+    private String alternateUrls;
+
     private String user;
 
     private Secret password;
 
     private boolean trustAllCerts;
 
+    private boolean asyncTransport;
+
+    private boolean cacheResponses;
+
     transient private DefaultHttpClient client;
 
     /**
@@ -167,7 +178,65 @@ public class UrbanDeploySite implements Serializable {
         }
     }
 
+    /**
+     * Gets the alternate urls of the other nodes of a clustered server.
+     *
+     * @return the newline separated alternate urls
+     */
+    public String getAlternateUrls() {
+        return alternateUrls;
+    }
+
+    /**
+     * Sets the alternate urls of the other nodes of a clustered server.
+     *
+     * @param alternateUrls
+     *          the newline separated alternate urls
+     */
+    @DataBoundSetter
+    public void setAlternateUrls(String alternateUrls) {
+        this.alternateUrls = alternateUrls;
+    }
+
+    /**
+     * Gets the url followed by all alternate urls.
+     *
+     * @return the endpoint urls without trailing slashes
+     */
+    public List<String> getEndpoints() {
+        List<String> endpoints = new ArrayList<String>();
+        endpoints.add(url);
+        addUrls(alternateUrls, endpoints);
+
+        return endpoints;
+    }
+
+    private static void addUrls(String urls, List<String> endpoints) {
+        if (urls != null) {
+            for (String endpoint : urls.split("\n")) {
+                endpoint = StringUtils.stripEnd(endpoint.trim().replaceAll("\\\\", "/"), "/");
+                if (endpoint.length() > 0 && !endpoints.contains(endpoint)) {
+                    endpoints.add(endpoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the uri of the healthiest, fastest endpoint as measured by the {@link SiteHealthMonitor}.
+     *
+     * @return the uri to send requests to
+     * @throws AbortException
+     */
+    public URI getPreferredUri() throws AbortException {
+        return toUri(SiteHealthMonitor.selectEndpoint(getEndpoints()));
+    }
+
     public URI getUri() throws AbortException {
+        return toUri(url);
+    }
+
+    private URI toUri(String url) throws AbortException {
         URI udSiteUri;
 
         try {
@@ -237,37 +306,143 @@ public class UrbanDeploySite implements Serializable {
     }
 
     /**
-     * Test whether the client can connect to the UCD site
+     * Gets asyncTransport
+     *
+     * @return if the plugin's own requests use the non-blocking transport
+     */
+    public boolean isAsyncTransport() {
+        return asyncTransport;
+    }
+
+    /**
+     * Sets asyncTransport to send the plugin's own requests over the non-blocking transport or not
+     *
+     * @param asyncTransport
+     */
+    @DataBoundSetter
+    public void setAsyncTransport(boolean asyncTransport) {
+        this.asyncTransport = asyncTransport;
+    }
+
+    /**
+     * Gets cacheResponses
+     *
+     * @return if metadata responses are cached and revalidated
+     */
+    public boolean isCacheResponses() {
+        return cacheResponses;
+    }
+
+    /**
+     * Sets cacheResponses to cache and revalidate metadata responses or not
+     *
+     * @param cacheResponses
+     */
+    @DataBoundSetter
+    public void setCacheResponses(boolean cacheResponses) {
+        this.cacheResponses = cacheResponses;
+    }
+
+    /**
+     * Gets a non-blocking transport authenticating as the given user
+     *
+     * @param tempUser the user, or empty for the site user
+     * @param tempPassword the password of the given user
+     * @return the transport
+     */
+    public AsyncTransport getAsyncTransport(String tempUser, Secret tempPassword) {
+        if (StringUtils.isEmpty(tempUser)) {
+            return new AsyncTransport(user, password, trustAllCerts);
+        }
+        return new AsyncTransport(tempUser, tempPassword, trustAllCerts);
+    }
+
+    /**
+     * Test whether the client can connect to every endpoint of the UCD site
      *
      * @throws Exception
      */
     public void verifyConnection() throws Exception {
-        URI uri = UriBuilder.fromPath(url).path("rest").path("state").build();
-        executeJSONGet(uri);
+        List<String> endpoints = getEndpoints();
+
+        if (asyncTransport) {
+            // check all endpoints at once instead of one after the other
+            AsyncTransport transport = getAsyncTransport(null, null);
+            List<URI> uris = new ArrayList<URI>();
+            List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+            for (String endpoint : endpoints) {
+                URI uri = UriBuilder.fromPath(endpoint).path("rest").path("state").build();
+                uris.add(uri);
+                futures.add(transport.execute(uri, 0));
+            }
+            for (int i = 0; i < uris.size(); i++) {
+                checkResponse(transport.await(uris.get(i), futures.get(i)), uris.get(i));
+            }
+        }
+        else {
+            for (String endpoint : endpoints) {
+                URI uri = UriBuilder.fromPath(endpoint).path("rest").path("state").build();
+                executeJSONGet(getClient(), uri);
+            }
+        }
+    }
+
+    /**
+     * Probe a single endpoint of the UCD site with a dedicated client
+     *
+     * @param endpoint the endpoint url
+     * @param timeout the connect and read timeout in milliseconds
+     * @return the round trip time in milliseconds
+     * @throws Exception
+     */
+    public long probe(String endpoint, int timeout) throws Exception {
+        URI uri = UriBuilder.fromPath(endpoint).path("rest").path("state").build();
+
+        if (asyncTransport) {
+            AsyncTransport transport = getAsyncTransport(null, null);
+            long startTime = System.currentTimeMillis();
+            checkResponse(transport.await(uri, transport.execute(uri, timeout)), uri);
+            return System.currentTimeMillis() - startTime;
+        }
+
+        DefaultHttpClient probeClient = getTempClient(user, password);
+        HttpConnectionParams.setConnectionTimeout(probeClient.getParams(), timeout);
+        HttpConnectionParams.setSoTimeout(probeClient.getParams(), timeout);
+
+        try {
+            long startTime = System.currentTimeMillis();
+            executeJSONGet(probeClient, uri);
+            return System.currentTimeMillis() - startTime;
+        }
+        finally {
+            probeClient.getConnectionManager().shutdown();
+        }
     }
 
     /**
      * Execute an HTTP GET request to the UCD server
      *
+     * @param client
      * @param uri
      * @throws Exception
      */
-    private void executeJSONGet(URI uri) throws Exception {
-        String result = null;
-        HttpClient client = getClient();
+    private void executeJSONGet(HttpClient client, URI uri) throws Exception {
         HttpGet method = new HttpGet(uri.toString());
         try {
-            HttpResponse response = client.execute(method);
-            int responseCode = response.getStatusLine().getStatusCode();
-            if (responseCode == 401) {
-                throw new Exception("Error connecting to IBM UrbanCode Deploy: Invalid user and/or password");
-            }
-            else if (responseCode != 200) {
-                throw new Exception("Error connecting to IBM UrbanCode Deploy: " + responseCode + "using URI: " + uri.toString());
-            }
+            checkResponse(client.execute(method), uri);
         }
         finally {
             method.releaseConnection();
         }
     }
+
+    private void checkResponse(HttpResponse response, URI uri) throws Exception {
+        int responseCode = response.getStatusLine().getStatusCode();
+        if (responseCode == 401) {
+            throw new Exception("Error connecting to IBM UrbanCode Deploy: Invalid user and/or password");
+        }
+        else if (responseCode != 200) {
+            throw new Exception("Error connecting to IBM UrbanCode Deploy: " + responseCode + "using URI: " + uri.toString());
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+
+/**
+ * This class bundles the matched artifact files into a single tar archive so that
+ * a component version with many small files is uploaded as one file
+ *
+ */
+public class VersionArchive {
+
+    /**
+     * Name of the version property holding the name of the uploaded archive
+     */
+    public static final String ARCHIVE_PROPERTY = "jenkins.archive";
+
+    /**
+     * Name of the version property telling the deployment process to extract the archive
+     */
+    public static final String EXTRACT_PROPERTY = "jenkins.archive.extract";
+
+    private static final String ARCHIVE_NAME = "artifacts.tar";
+    private static final String COMPRESSED_ARCHIVE_NAME = "artifacts.tar.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int EXECUTABLE_MODE = 0100755;
+
+    private VersionArchive() {
+    }
+
+    /**
+     * Get the file name of the archive
+     *
+     * @param compress Whether the archive is gzip compressed
+     * @return The archive file name
+     */
+    public static String getArchiveName(boolean compress) {
+        return compress ? COMPRESSED_ARCHIVE_NAME : ARCHIVE_NAME;
+    }
+
+    /**
+     * Write the matched files into a tar archive
+     *
+     * @param workDir The directory the paths are relative to
+     * @param paths The relative paths of the files to archive
+     * @param archive The archive file to create
+     * @param compress Whether to gzip compress the archive
+     * @throws IOException
+     */
+    public static void create(File workDir, String[] paths, File archive, boolean compress) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE);
+        if (compress) {
+            out = new GzipCompressorOutputStream(out);
+        }
+
+        TarArchiveOutputStream tarOut = new TarArchiveOutputStream(out);
+        try {
+            tarOut.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+            byte[] buffer = new byte[BUFFER_SIZE];
+
+            for (String path : paths) {
+                File file = new File(workDir, path);
+                TarArchiveEntry entry = new TarArchiveEntry(file, path);
+                if (file.canExecute()) {
+                    entry.setMode(EXECUTABLE_MODE);
+                }
+
+                tarOut.putArchiveEntry(entry);
+                InputStream in = new FileInputStream(file);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        tarOut.write(buffer, 0, read);
+                    }
+                }
+                finally {
+                    in.close();
+                }
+                tarOut.closeArchiveEntry();
+            }
+
+            tarOut.finish();
+        }
+        finally {
+            tarOut.close();
+        }
+    }
+}
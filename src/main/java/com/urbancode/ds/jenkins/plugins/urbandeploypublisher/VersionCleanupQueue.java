@@ -0,0 +1,267 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.AbortException;
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.PeriodicWork;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * This class deletes the component versions of failed uploads in the background.
+ * Queued deletions are persisted on the controller and retried with exponential backoff
+ * while the server is unreachable or overloaded, so a failing build does not wait for the
+ * cleanup and a restart does not lose it. A version the server no longer knows counts as
+ * deleted, and a deletion the server keeps refusing is given up.
+ *
+ */
+@Extension
+public class VersionCleanupQueue extends AsyncPeriodicWork {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final long RETRY_INTERVAL = 60 * 1000L;
+    private static final long MAX_BACKOFF = 6 * 60 * 60 * 1000L;
+    // deletions for a site that has been removed from the configuration are dropped after this many attempts
+    private static final int MAX_ATTEMPTS_WITHOUT_SITE = 10;
+    // deletions the server refuses, such as for a missing permission, are dropped after this many attempts
+    private static final int MAX_REJECTIONS = 5;
+    private static final String QUEUE_FILE = "ucd-version-cleanup.xml";
+
+    /**
+     * @return The registered queue
+     */
+    public static VersionCleanupQueue get() {
+        return PeriodicWork.all().get(VersionCleanupQueue.class);
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    private List<Entry> entries;
+
+    public VersionCleanupQueue() {
+        super("IBM UrbanCode Deploy version cleanup");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return RETRY_INTERVAL;
+    }
+
+    /**
+     * Queue the deletion of a component version
+     *
+     * @param siteName The profile name of the site the version was created on
+     * @param altUser The alternative user the version was created as, or empty for the site user
+     * @param altPassword The password of the alternative user
+     * @param versionId The id of the version to delete
+     * @param component The name of the component
+     * @param version The name of the version
+     * @throws IOException if the queue could not be saved
+     */
+    public synchronized void enqueue(
+            String siteName,
+            String altUser,
+            Secret altPassword,
+            UUID versionId,
+            String component,
+            String version)
+    throws IOException {
+        getEntries().add(new Entry(siteName, altUser, altPassword, versionId.toString(), component, version));
+        save();
+    }
+
+    /**
+     * @return The number of deletions waiting for a successful attempt
+     */
+    public synchronized int size() {
+        return getEntries().size();
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws IOException, InterruptedException {
+        long now = System.currentTimeMillis();
+        List<Entry> due = new ArrayList<Entry>();
+
+        synchronized (this) {
+            for (Entry entry : getEntries()) {
+                if (entry.nextAttempt <= now) {
+                    due.add(entry);
+                }
+            }
+        }
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        List<Entry> finished = new ArrayList<Entry>();
+        for (Entry entry : due) {
+            String description = "version '" + entry.version + "' of component '" + entry.component + "'";
+            UrbanDeploySite site = getSite(entry.siteName);
+            if (site == null) {
+                boolean givenUp;
+                synchronized (this) {
+                    entry.attempts++;
+                    entry.nextAttempt = System.currentTimeMillis() + RETRY_INTERVAL;
+                    givenUp = entry.attempts >= MAX_ATTEMPTS_WITHOUT_SITE;
+                }
+                if (givenUp) {
+                    listener.error("Giving up deletion of incomplete " + description + ", site '" + entry.siteName
+                            + "' is no longer configured.");
+                    finished.add(entry);
+                }
+                continue;
+            }
+
+            try {
+                if (delete(site, entry)) {
+                    listener.getLogger().println("Deleted incomplete " + description + ".");
+                }
+                else {
+                    listener.getLogger().println("Incomplete " + description + " was already deleted.");
+                }
+                finished.add(entry);
+            }
+            catch (AbortException ex) {
+                boolean rejected = ex instanceof RejectedRequestException
+                        && !((RejectedRequestException) ex).isTransient();
+                long backoff;
+                boolean givenUp;
+                synchronized (this) {
+                    entry.attempts++;
+                    if (rejected) {
+                        entry.rejections++;
+                    }
+                    backoff = Math.min(MAX_BACKOFF, RETRY_INTERVAL << Math.min(entry.attempts, 20));
+                    entry.nextAttempt = System.currentTimeMillis() + backoff;
+                    givenUp = entry.rejections >= MAX_REJECTIONS;
+                }
+                if (givenUp) {
+                    listener.error("Giving up deletion of incomplete " + description + ", the server refused it "
+                            + MAX_REJECTIONS + " times : " + ex.getMessage());
+                    finished.add(entry);
+                }
+                else {
+                    listener.error("Failed to delete incomplete " + description + ", retrying in "
+                            + (backoff / 1000) + " seconds : " + ex.getMessage());
+                }
+            }
+        }
+
+        synchronized (this) {
+            getEntries().removeAll(finished);
+            save();
+        }
+    }
+
+    private UrbanDeploySite getSite(String siteName) {
+        for (UrbanDeploySite configuredSite : UrbanDeployPublisher.DESCRIPTOR.getSites()) {
+            if (configuredSite.getDisplayName().equals(siteName)) {
+                return configuredSite;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Delete the version of an entry
+     *
+     * @param site
+     * @param entry
+     * @return Whether the version was deleted, false if it was already gone
+     * @throws AbortException
+     */
+    private boolean delete(UrbanDeploySite site, Entry entry) throws AbortException {
+        RestClientHelper clientHelper;
+        if (entry.altUser == null || entry.altUser.isEmpty()) {
+            clientHelper = new RestClientHelper(site.getPreferredUri(), site, site.getUser(), site.getPassword());
+        }
+        else {
+            clientHelper = new RestClientHelper(site.getPreferredUri(), site, entry.altUser, entry.altPassword);
+        }
+
+        if (clientHelper.deleteComponentVersion(UUID.fromString(entry.versionId))) {
+            return true;
+        }
+        // a server answering not found for a version it still lists is refusing the deletion
+        if (clientHelper.versionExists(entry.component, entry.version)) {
+            throw new RejectedRequestException("The server did not find component version with id '"
+                    + entry.versionId + "' but still lists it", 404);
+        }
+        return false;
+    }
+
+    private List<Entry> getEntries() {
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            XmlFile file = getQueueFile();
+            if (file.exists()) {
+                try {
+                    @SuppressWarnings("unchecked")
+                    List<Entry> saved = (List<Entry>) file.read();
+                    entries.addAll(saved);
+                }
+                catch (IOException ex) {
+                    // an unreadable queue cannot be retried, start over with the new failures
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void save() throws IOException {
+        getQueueFile().write(new ArrayList<Entry>(entries));
+    }
+
+    private XmlFile getQueueFile() {
+        return new XmlFile(Hudson.XSTREAM, new File(Hudson.getInstance().getRootDir(), QUEUE_FILE));
+    }
+
+    /**
+     * A queued deletion
+     */
+    public static class Entry {
+        final private String siteName;
+        final private String altUser;
+        final private Secret altPassword;
+        final private String versionId;
+        final private String component;
+        final private String version;
+        private int attempts;
+        private int rejections;
+        private long nextAttempt;
+
+        private Entry(
+                String siteName,
+                String altUser,
+                Secret altPassword,
+                String versionId,
+                String component,
+                String version)
+        {
+            this.siteName = siteName;
+            this.altUser = altUser;
+            this.altPassword = altPassword;
+            this.versionId = versionId;
+            this.component = component;
+            this.version = version;
+        }
+    }
+}
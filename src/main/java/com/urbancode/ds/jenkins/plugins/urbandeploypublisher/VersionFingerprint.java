@@ -0,0 +1,192 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * This class computes a content fingerprint of the files matched for a component version
+ *
+ */
+public class VersionFingerprint {
+
+    /**
+     * Name of the version property holding the fingerprint of the uploaded files
+     */
+    public static final String PROPERTY_NAME = "jenkins.contentFingerprint";
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // modification times closer than this to the time of hashing are not trusted by the index
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+    private VersionFingerprint() {
+    }
+
+    /**
+     * Compute a fingerprint over the relative path, size and content of every matched file
+     *
+     * @param workDir The directory the paths are relative to
+     * @param paths The sorted relative paths of the files to fingerprint
+     * @return The hex encoded fingerprint
+     * @throws IOException
+     */
+    public static String compute(File workDir, String[] paths) throws IOException {
+        return compute(workDir, paths, null);
+    }
+
+    /**
+     * Compute a fingerprint over the relative path, size and content of every matched file.
+     * Files whose size and modification time match the index are not read again, all other
+     * files are hashed in parallel and recorded in the index.
+     *
+     * @param workDir The directory the paths are relative to
+     * @param paths The sorted relative paths of the files to fingerprint
+     * @param index The index of previously computed file digests, may be null
+     * @return The hex encoded fingerprint
+     * @throws IOException
+     */
+    public static String compute(final File workDir, final String[] paths, final FingerprintIndex index)
+    throws IOException {
+        final long[] sizes = new long[paths.length];
+        final long[] lastModified = new long[paths.length];
+        byte[][] digests = new byte[paths.length][];
+        List<Integer> changed = new ArrayList<Integer>();
+
+        for (int i = 0; i < paths.length; i++) {
+            File file = new File(workDir, paths[i]);
+            sizes[i] = file.length();
+            lastModified[i] = file.lastModified();
+            digests[i] = index != null ? index.getDigest(paths[i], sizes[i], lastModified[i]) : null;
+            if (digests[i] == null) {
+                changed.add(i);
+            }
+        }
+
+        hashFiles(workDir, paths, changed, digests);
+
+        if (index != null) {
+            // a file modified within the timestamp granularity of the hash could change again
+            // without a visible change of its modification time, so it is hashed again next time
+            long trustedBefore = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+            for (int i : changed) {
+                if (lastModified[i] < trustedBefore) {
+                    index.putDigest(paths[i], sizes[i], lastModified[i], digests[i]);
+                }
+            }
+            index.retain(paths);
+        }
+
+        MessageDigest setDigest = newDigest();
+        for (int i = 0; i < paths.length; i++) {
+            setDigest.update(paths[i].getBytes("UTF-8"));
+            setDigest.update((byte) 0);
+            setDigest.update(Long.toString(sizes[i]).getBytes("UTF-8"));
+            setDigest.update((byte) 0);
+            setDigest.update(digests[i]);
+        }
+
+        return Hex.encodeHexString(setDigest.digest());
+    }
+
+    private static void hashFiles(final File workDir, final String[] paths, List<Integer> changed,
+            final byte[][] digests)
+    throws IOException {
+        int threads = Math.min(changed.size(), Runtime.getRuntime().availableProcessors());
+
+        if (threads <= 1) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            MessageDigest fileDigest = newDigest();
+            for (int i : changed) {
+                digests[i] = hashFile(new File(workDir, paths[i]), fileDigest, buffer);
+            }
+            return;
+        }
+
+        // every worker keeps its own buffer and digest, they are not thread safe
+        final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+            @Override
+            protected byte[] initialValue() {
+                return new byte[BUFFER_SIZE];
+            }
+        };
+        final ThreadLocal<MessageDigest> fileDigests = new ThreadLocal<MessageDigest>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (final int i : changed) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        MessageDigest fileDigest = fileDigests.get();
+                        if (fileDigest == null) {
+                            fileDigest = newDigest();
+                            fileDigests.set(fileDigest);
+                        }
+                        digests[i] = hashFile(new File(workDir, paths[i]), fileDigest, buffers.get());
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing files");
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Failed to hash files: " + ex.getCause());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] hashFile(File file, MessageDigest fileDigest, byte[] buffer) throws IOException {
+        fileDigest.reset();
+        InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                fileDigest.update(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return fileDigest.digest();
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Digest algorithm " + ALGORITHM + " is not available: " + ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * (c) Copyright IBM Corporation 2015, 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import hudson.model.BuildListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class orders concurrent builds that publish the same version name of a component to the
+ * same site, so only one of them creates the version. It is held while the version is created and
+ * its content uploaded, not during the deployment. Builds publishing other versions do not wait,
+ * and a lock is discarded once no build holds or waits for it.
+ *
+ */
+public class VersionLock {
+
+    //**********************************************************************************************
+    // CLASS
+    //**********************************************************************************************
+    private static final Map<String, VersionLock> LOCKS = new HashMap<String, VersionLock>();
+
+    /**
+     * Acquire the lock of a component version, which must be released in a finally block
+     *
+     * @param site The display name of the site
+     * @param component The resolved component name
+     * @param version The resolved version name
+     * @param listener The listener to report waiting on
+     * @return The acquired lock
+     * @throws InterruptedException if the build is aborted while waiting
+     */
+    public static VersionLock acquire(String site, String component, String version, BuildListener listener)
+    throws InterruptedException {
+        String key = site + "\n" + component + "\n" + version;
+        VersionLock versionLock;
+        synchronized (LOCKS) {
+            versionLock = LOCKS.get(key);
+            if (versionLock == null) {
+                versionLock = new VersionLock(key);
+                LOCKS.put(key, versionLock);
+            }
+            versionLock.users++;
+        }
+
+        if (!versionLock.lock.tryLock()) {
+            listener.getLogger().println("Waiting for another build publishing component " + component
+                    + " version " + version + ".");
+            try {
+                versionLock.lock.lockInterruptibly();
+            }
+            catch (InterruptedException ex) {
+                versionLock.leave();
+                throw ex;
+            }
+        }
+
+        return versionLock;
+    }
+
+    //**********************************************************************************************
+    // INSTANCE
+    //**********************************************************************************************
+    final private String key;
+    // fair, so waiting builds get the version in arrival order
+    final private ReentrantLock lock = new ReentrantLock(true);
+    // the builds holding or waiting for the lock, guarded by LOCKS
+    private int users;
+
+    private VersionLock(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Release the lock
+     */
+    public void release() {
+        lock.unlock();
+        leave();
+    }
+
+    private void leave() {
+        synchronized (LOCKS) {
+            if (--users == 0) {
+                LOCKS.remove(key);
+            }
+        }
+    }
+}
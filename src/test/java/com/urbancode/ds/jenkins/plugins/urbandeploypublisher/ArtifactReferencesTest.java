@@ -0,0 +1,249 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import hudson.AbortException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Resolves references against a local http server standing in for a binary repository
+ */
+public class ArtifactReferencesTest {
+
+    private static final String SHA1 = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+    private static final String SHA256 = "d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String baseUrl;
+    // the headers of every artifact the server knows, by path
+    private Map<String, Map<String, String>> artifacts;
+    // the bodies of the checksum files the server knows, by path
+    private Map<String, String> files;
+
+    @Before
+    public void setUp() throws IOException {
+        artifacts = new HashMap<String, Map<String, String>>();
+        files = new HashMap<String, String>();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                try {
+                    if ("HEAD".equals(exchange.getRequestMethod()) && artifacts.containsKey(path)) {
+                        exchange.getResponseHeaders().putAll(toHeaders(artifacts.get(path)));
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                    else if ("GET".equals(exchange.getRequestMethod()) && files.containsKey(path)) {
+                        byte[] body = files.get(path).getBytes("UTF-8");
+                        exchange.sendResponseHeaders(200, body.length);
+                        exchange.getResponseBody().write(body);
+                    }
+                    else {
+                        exchange.sendResponseHeaders(404, -1);
+                    }
+                }
+                finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void parseNamesReferencesAfterTheirUrl() throws AbortException {
+        ArtifactReferences references = ArtifactReferences.parse(
+                "https://repo/libs/app-1.0.jar\n"
+                + "\n"
+                + "  config/app.properties = https://repo/files/app.properties?version=1.0=final  \n");
+
+        assertEquals(2, references.size());
+    }
+
+    @Test
+    public void parseRejectsRelativeUrls() {
+        assertParseFails("libs/app-1.0.jar");
+    }
+
+    @Test
+    public void parseRejectsUrlsWithoutAFileName() {
+        assertParseFails("https://repo/libs/");
+    }
+
+    @Test
+    public void parseRejectsDuplicatePaths() {
+        assertParseFails("https://repo/a/app.jar\nhttps://repo/b/app.jar");
+    }
+
+    @Test
+    public void parseRejectsAnEmptySpec() {
+        assertParseFails(" \n ");
+    }
+
+    @Test
+    public void resolveReadsChecksumHeaders() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Length", "1024");
+        headers.put("X-Checksum-Sha1", SHA1.toUpperCase());
+        artifacts.put("/libs/app.jar", headers);
+
+        ArtifactReferences references = ArtifactReferences.parse(baseUrl + "/libs/app.jar");
+        references.resolve(quietLog());
+
+        assertEquals(1024, references.getTotalSize());
+        Map<String, String> entry = readManifest(references).get("app.jar");
+        assertEquals("SHA-1", entry.get("algorithm"));
+        assertEquals(SHA1, entry.get("checksum"));
+        assertEquals("1024", entry.get("size"));
+        assertEquals(baseUrl + "/libs/app.jar", entry.get("url"));
+    }
+
+    @Test
+    public void resolveFallsBackToChecksumFiles() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Length", "2048");
+        artifacts.put("/libs/app.war", headers);
+        files.put("/libs/app.war.sha256", SHA256 + "  app.war\n");
+
+        ArtifactReferences references = ArtifactReferences.parse("lib/web.war=" + baseUrl + "/libs/app.war");
+        references.resolve(quietLog());
+
+        Map<String, String> entry = readManifest(references).get("lib/web.war");
+        assertEquals("SHA-256", entry.get("algorithm"));
+        assertEquals(SHA256, entry.get("checksum"));
+        assertEquals("2048", entry.get("size"));
+    }
+
+    @Test
+    public void resolveFailsForMissingArtifacts() throws IOException {
+        ArtifactReferences references = ArtifactReferences.parse(baseUrl + "/libs/missing.jar");
+        try {
+            references.resolve(quietLog());
+            fail("A missing artifact must not resolve");
+        }
+        catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("404"));
+        }
+    }
+
+    @Test
+    public void resolveFailsWithoutAChecksum() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Length", "10");
+        artifacts.put("/libs/app.zip", headers);
+
+        ArtifactReferences references = ArtifactReferences.parse(baseUrl + "/libs/app.zip");
+        try {
+            references.resolve(quietLog());
+            fail("An artifact without a checksum must not resolve");
+        }
+        catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void resolveHashesLocalFiles() throws IOException {
+        File artifact = folder.newFile("local.bin");
+        OutputStream out = new FileOutputStream(artifact);
+        try {
+            out.write("local artifact".getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        ArtifactReferences references = ArtifactReferences.parse(artifact.toURI().toString());
+        references.resolve(quietLog());
+
+        Map<String, String> entry = readManifest(references).get("local.bin");
+        assertEquals("SHA-256", entry.get("algorithm"));
+        assertEquals(DigestUtils.sha256Hex("local artifact".getBytes("UTF-8")), entry.get("checksum"));
+        assertEquals(String.valueOf(artifact.length()), entry.get("size"));
+    }
+
+    private Map<String, Map<String, String>> readManifest(ArtifactReferences references) throws IOException {
+        File manifest = new File(folder.getRoot(), "manifest/" + ArtifactReferences.MANIFEST_NAME);
+        references.writeManifest(manifest);
+
+        final Map<String, Map<String, String>> entries = new HashMap<String, Map<String, String>>();
+        JsonParser parser = JsonStream.parse(new FileInputStream(manifest));
+        try {
+            JsonStream.readArray(parser, new JsonStream.ElementHandler() {
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    entries.put(fields.get("path"), fields);
+                    return true;
+                }
+            }, "path", "url", "size", "algorithm", "checksum");
+        }
+        finally {
+            parser.close();
+        }
+        assertEquals(references.size(), entries.size());
+        return entries;
+    }
+
+    private static void assertParseFails(String spec) {
+        try {
+            ArtifactReferences.parse(spec);
+            fail("'" + spec + "' must not parse");
+        }
+        catch (AbortException expected) {
+        }
+    }
+
+    private static Map<String, List<String>> toHeaders(Map<String, String> values) {
+        Map<String, List<String>> headers = new HashMap<String, List<String>>();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            headers.put(value.getKey(), Collections.singletonList(value.getValue()));
+        }
+        return headers;
+    }
+
+    private static PrintStream quietLog() {
+        return new PrintStream(new ByteArrayOutputStream());
+    }
+}
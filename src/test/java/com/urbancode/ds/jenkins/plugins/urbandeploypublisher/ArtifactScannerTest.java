@@ -0,0 +1,96 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ArtifactScannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = folder.getRoot();
+        touch("b.jar");
+        touch("a.jar");
+        touch("lib/c.jar");
+        touch("lib/c.txt");
+        touch("target/d.jar");
+    }
+
+    @Test
+    public void scanReturnsSortedRelativePaths() {
+        String[] paths = ArtifactScanner.scan(workDir, new String[] {"**/*.jar"}, new String[0]);
+
+        assertArrayEquals(new String[] {"a.jar", "b.jar", "lib/c.jar", "target/d.jar"}, paths);
+    }
+
+    @Test
+    public void scanAppliesExcludes() {
+        String[] paths = ArtifactScanner.scan(workDir, new String[] {"**/*.jar"}, new String[] {"target/**"});
+
+        assertArrayEquals(new String[] {"a.jar", "b.jar", "lib/c.jar"}, paths);
+    }
+
+    @Test
+    public void scanWithoutIncludesMatchesEverything() {
+        String[] paths = ArtifactScanner.scan(workDir, new String[0], new String[] {"**/*.jar"});
+
+        assertArrayEquals(new String[] {"lib/c.txt"}, paths);
+    }
+
+    @Test
+    public void literalPatternsOfPlainPathsAreThePaths() {
+        String[][] patterns = ArtifactScanner.literalPatterns(workDir, new String[] {"a.jar", "lib/c.jar"});
+
+        assertArrayEquals(new String[] {"a.jar", "lib/c.jar"}, patterns[0]);
+        assertArrayEquals(new String[0], patterns[1]);
+    }
+
+    @Test
+    public void literalPatternsMatchWildcardNamesOnly() throws IOException {
+        touch("a*b.txt");
+        touch("axb.txt");
+        String[] paths = {"a*b.txt", "lib/c.txt"};
+
+        String[][] patterns = ArtifactScanner.literalPatterns(workDir, paths);
+
+        assertArrayEquals(new String[] {"a?b.txt", "lib/c.txt"}, patterns[0]);
+        assertArrayEquals(new String[] {"axb.txt"}, patterns[1]);
+        assertArrayEquals(paths, ArtifactScanner.scan(workDir, patterns[0], patterns[1]));
+    }
+
+    @Test
+    public void literalPatternsKeepWantedFilesTheExcludesWouldMatch() throws IOException {
+        touch("a*b.txt");
+        touch("a?b.txt");
+        String[] paths = {"a*b.txt", "a?b.txt"};
+
+        String[][] patterns = ArtifactScanner.literalPatterns(workDir, paths);
+
+        // the same pattern matches both names, so neither is excluded
+        assertArrayEquals(paths, ArtifactScanner.scan(workDir, patterns[0], patterns[1]));
+    }
+
+    private void touch(String path) throws IOException {
+        File file = new File(workDir, path);
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+    }
+}
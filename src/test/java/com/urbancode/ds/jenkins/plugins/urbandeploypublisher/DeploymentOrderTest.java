@@ -0,0 +1,139 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.model.BuildListener;
+import hudson.model.StreamBuildListener;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeploymentOrderTest {
+
+    private ByteArrayOutputStream log;
+    private BuildListener listener;
+
+    @Before
+    public void setUp() {
+        log = new ByteArrayOutputStream();
+        listener = new StreamBuildListener(log, Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void buildsDeployInArrivalOrder() throws Exception {
+        DeploymentOrder.Ticket first = DeploymentOrder.enter("site", "inOrder");
+        DeploymentOrder.Ticket second = DeploymentOrder.enter("site", "inOrder");
+
+        assertTrue(first.awaitTurn("1", listener));
+        first.requested("1");
+        first.leave();
+
+        assertTrue(second.awaitTurn("2", listener));
+        second.requested("2");
+        second.leave();
+    }
+
+    @Test
+    public void olderVersionIsNotDeployedOverANewerOne() throws Exception {
+        DeploymentOrder.Ticket older = DeploymentOrder.enter("site", "superseded");
+        DeploymentOrder.Ticket newer = DeploymentOrder.enter("site", "superseded");
+
+        // the later build finished its upload first
+        assertTrue(newer.awaitTurn("2", listener));
+        newer.requested("2");
+        newer.leave();
+
+        assertFalse(older.awaitTurn("1", listener));
+        older.leave();
+        assertTrue(log.toString("UTF-8").contains("version 2, which supersedes version 1"));
+    }
+
+    @Test
+    public void otherComponentsAndSitesAreNotOrdered() throws Exception {
+        DeploymentOrder.Ticket older = DeploymentOrder.enter("site", "independent");
+        DeploymentOrder.Ticket otherComponent = DeploymentOrder.enter("site", "other");
+        DeploymentOrder.Ticket otherSite = DeploymentOrder.enter("other", "independent");
+
+        assertTrue(otherComponent.awaitTurn("2", listener));
+        otherComponent.requested("2");
+        otherComponent.leave();
+        assertTrue(otherSite.awaitTurn("2", listener));
+        otherSite.requested("2");
+        otherSite.leave();
+
+        assertTrue(older.awaitTurn("1", listener));
+        older.requested("1");
+        older.leave();
+    }
+
+    @Test
+    public void requestsWaitForTheBuildHoldingTheTurn() throws Exception {
+        final DeploymentOrder.Ticket first = DeploymentOrder.enter("site", "waiting");
+        final DeploymentOrder.Ticket second = DeploymentOrder.enter("site", "waiting");
+        final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch waiting = new CountDownLatch(1);
+
+        assertTrue(first.awaitTurn("1", listener));
+
+        Thread later = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waiting.countDown();
+                    if (second.awaitTurn("2", listener)) {
+                        requested.add("2");
+                        second.requested("2");
+                    }
+                }
+                catch (InterruptedException ex) {
+                    requested.add("interrupted");
+                }
+                finally {
+                    second.leave();
+                }
+            }
+        };
+        later.start();
+        assertTrue(waiting.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200);
+
+        requested.add("1");
+        first.requested("1");
+        first.leave();
+        later.join(10000);
+
+        assertEquals(2, requested.size());
+        assertEquals("1", requested.get(0));
+        assertEquals("2", requested.get(1));
+    }
+
+    @Test
+    public void failedRequestPassesTheTurnOn() throws Exception {
+        DeploymentOrder.Ticket failed = DeploymentOrder.enter("site", "failed");
+        DeploymentOrder.Ticket next = DeploymentOrder.enter("site", "failed");
+
+        // the deployment request failed, the ticket is left without a request
+        assertTrue(failed.awaitTurn("1", listener));
+        failed.leave();
+
+        assertTrue(next.awaitTurn("2", listener));
+        next.requested("2");
+        next.leave();
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FingerprintIndexTest {
+
+    private static final byte[] DIGEST = {1, 2, 3, 4};
+    private static final byte[] OTHER_DIGEST = {5, 6, 7, 8, 9};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workDir;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = folder.newFolder("workspace");
+    }
+
+    @After
+    public void tearDown() {
+        File indexFile = FingerprintIndex.getIndexFile(workDir);
+        indexFile.delete();
+        File[] tempFiles = indexFile.getParentFile().listFiles();
+        if (tempFiles != null) {
+            for (File tempFile : tempFiles) {
+                if (tempFile.getName().startsWith(indexFile.getName())) {
+                    tempFile.delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void digestsSurviveASaveAndLoad() throws IOException {
+        FingerprintIndex index = FingerprintIndex.load(workDir);
+        index.putDigest("app.jar", 10, 1000, DIGEST);
+        index.putDigest("lib/\u00e9t\u00e9.jar", 20, 2000, OTHER_DIGEST);
+        index.save();
+
+        FingerprintIndex loaded = FingerprintIndex.load(workDir);
+
+        assertArrayEquals(DIGEST, loaded.getDigest("app.jar", 10, 1000));
+        assertArrayEquals(OTHER_DIGEST, loaded.getDigest("lib/\u00e9t\u00e9.jar", 20, 2000));
+        assertEquals(0, loaded.getMissCount());
+    }
+
+    @Test
+    public void changedFilesAreMisses() {
+        FingerprintIndex index = FingerprintIndex.load(workDir);
+        index.putDigest("app.jar", 10, 1000, DIGEST);
+
+        assertNull(index.getDigest("app.jar", 11, 1000));
+        assertNull(index.getDigest("app.jar", 10, 1001));
+        assertNull(index.getDigest("other.jar", 10, 1000));
+        assertEquals(3, index.getMissCount());
+    }
+
+    @Test
+    public void retainDropsOtherFiles() throws IOException {
+        FingerprintIndex index = FingerprintIndex.load(workDir);
+        index.putDigest("app.jar", 10, 1000, DIGEST);
+        index.putDigest("removed.jar", 20, 2000, OTHER_DIGEST);
+        index.retain(new String[] {"app.jar", "new.jar"});
+        index.save();
+
+        FingerprintIndex loaded = FingerprintIndex.load(workDir);
+
+        assertArrayEquals(DIGEST, loaded.getDigest("app.jar", 10, 1000));
+        assertNull(loaded.getDigest("removed.jar", 20, 2000));
+        assertNull(loaded.getDigest("new.jar", 0, 0));
+    }
+
+    @Test
+    public void unreadableIndexIsEmpty() throws IOException {
+        File indexFile = FingerprintIndex.getIndexFile(workDir);
+        indexFile.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(indexFile);
+        try {
+            // the magic number and a truncated header
+            out.write(new byte[] {0x55, 0x43, 0x44, 0x46, 0, 0});
+        }
+        finally {
+            out.close();
+        }
+
+        FingerprintIndex index = FingerprintIndex.load(workDir);
+
+        assertNull(index.getDigest("app.jar", 10, 1000));
+    }
+
+    @Test
+    public void concurrentSavesLeaveACompleteIndex() throws Exception {
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> savers = new ArrayList<Thread>();
+
+        for (int i = 0; i < threads; i++) {
+            final int saver = i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        FingerprintIndex index = FingerprintIndex.load(workDir);
+                        for (int file = 0; file < 100; file++) {
+                            index.putDigest("file" + file + ".jar", saver, file, DIGEST);
+                        }
+                        start.await();
+                        for (int round = 0; round < 20; round++) {
+                            index.save();
+                        }
+                    }
+                    catch (Throwable ex) {
+                        failures.add(ex);
+                    }
+                }
+            };
+            thread.start();
+            savers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : savers) {
+            thread.join();
+        }
+
+        assertTrue(failures.toString(), failures.isEmpty());
+
+        // whichever save won, the index holds the complete entries of one build
+        FingerprintIndex loaded = FingerprintIndex.load(workDir);
+        int saver = -1;
+        for (int i = 0; i < threads && saver < 0; i++) {
+            if (loaded.getDigest("file0.jar", i, 0) != null) {
+                saver = i;
+            }
+        }
+        assertTrue(saver >= 0);
+        for (int file = 0; file < 100; file++) {
+            assertArrayEquals(DIGEST, loaded.getDigest("file" + file + ".jar", saver, file));
+        }
+
+        File indexFile = FingerprintIndex.getIndexFile(workDir);
+        for (File file : indexFile.getParentFile().listFiles()) {
+            assertTrue("Temporary file left behind : " + file.getName(),
+                    !file.getName().startsWith(indexFile.getName()) || file.equals(indexFile));
+        }
+    }
+}
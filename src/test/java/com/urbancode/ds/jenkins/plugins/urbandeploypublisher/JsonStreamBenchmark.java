@@ -0,0 +1,147 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Compares reading a large component version list with {@link JsonStream} against decoding the
+ * body to a string and building a Jettison tree, as the rest client library does. Runs only with
+ * -Dudeploy.benchmark=true and prints the time and the retained heap of both approaches.
+ *
+ */
+public class JsonStreamBenchmark {
+
+    private static final int VERSIONS = 100000;
+    private static final int ROUNDS = 5;
+
+    @Test
+    public void versionList() throws Exception {
+        assumeTrue(Boolean.getBoolean("udeploy.benchmark"));
+
+        byte[] body = versionList(VERSIONS);
+        System.out.println("Version list of " + VERSIONS + " versions, " + body.length + " bytes");
+
+        // warm up both paths before measuring
+        assertEquals(VERSIONS, readStreaming(body));
+        assertEquals(VERSIONS, readTree(body));
+
+        long streamingTime = 0;
+        long treeTime = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            readStreaming(body);
+            streamingTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            readTree(body);
+            treeTime += System.nanoTime() - start;
+        }
+
+        System.out.println("JsonStream:        " + streamingTime / ROUNDS / 1000000 + " ms per read, "
+                + retainedStreaming(body) / 1024 + " KB retained");
+        System.out.println("String + Jettison: " + treeTime / ROUNDS / 1000000 + " ms per read, "
+                + retainedTree(body) / 1024 + " KB retained");
+    }
+
+    private static int readStreaming(byte[] body) throws IOException {
+        final int[] count = new int[1];
+        JsonStream.read(new ByteArrayInputStream(body), 0, JsonStream.arrayReader(new JsonStream.ElementHandler() {
+            @Override
+            public boolean element(Map<String, String> fields) {
+                if (fields.containsKey("name") && fields.containsKey("created")) {
+                    count[0]++;
+                }
+                return true;
+            }
+        }, "name", "created"));
+        return count[0];
+    }
+
+    private static int readTree(byte[] body) throws IOException, JSONException {
+        JSONArray versions = new JSONArray(new String(body, "UTF-8"));
+        int count = 0;
+        for (int i = 0; i < versions.length(); i++) {
+            JSONObject version = versions.getJSONObject(i);
+            if (version.has("name") && version.has("created")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // the heap held at the peak of a streaming read, when the parser is positioned at the last element
+    private static long retainedStreaming(byte[] body) throws IOException {
+        JsonParser parser = JsonStream.parse(new ByteArrayInputStream(body));
+        try {
+            long before = usedHeap();
+            final long[] peak = new long[1];
+            JsonStream.readArray(parser, new JsonStream.ElementHandler() {
+                private int index;
+
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    if (++index == VERSIONS) {
+                        peak[0] = usedHeap();
+                    }
+                    return true;
+                }
+            }, "name", "created");
+            return Math.max(0, peak[0] - before);
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    // the heap held by the decoded body and the tree built from it
+    private static long retainedTree(byte[] body) throws IOException, JSONException {
+        long before = usedHeap();
+        String text = new String(body, "UTF-8");
+        JSONArray versions = new JSONArray(text);
+        long after = usedHeap();
+        assertEquals(VERSIONS, versions.length());
+        return Math.max(0, after - before);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static byte[] versionList(int versions) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < versions; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"").append(String.format("%08d-0000-0000-0000-000000000000", i))
+                    .append("\",\"name\":\"1.0.").append(i)
+                    .append("\",\"type\":\"FULL\",\"created\":").append(1500000000000L + i)
+                    .append(",\"description\":\"Published by build ").append(i)
+                    .append("\",\"active\":true,\"archived\":false")
+                    .append(",\"component\":{\"id\":\"c\",\"name\":\"component\",\"tags\":[]}")
+                    .append(",\"security\":{\"read\":true,\"execute\":true}}");
+        }
+        return json.append(']').toString().getBytes("UTF-8");
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+public class JsonStreamTest {
+
+    private static final String VERSIONS = "["
+            + "{\"id\":\"1\",\"name\":\"1.0\",\"created\":100,\"component\":{\"name\":\"nested\"},\"tags\":[\"a\"]},"
+            + "{\"id\":\"2\",\"name\":\"1.1\",\"created\":200,\"description\":null},"
+            + "\"not an object\","
+            + "{\"id\":\"3\",\"name\":\"1.2\",\"created\":300}"
+            + "]";
+
+    @Test
+    public void readArrayPassesRequestedFieldsOfEveryObject() throws IOException {
+        final List<Map<String, String>> elements = new ArrayList<Map<String, String>>();
+        JsonParser parser = JsonStream.parse(VERSIONS);
+        try {
+            JsonStream.readArray(parser, new JsonStream.ElementHandler() {
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    elements.add(fields);
+                    return true;
+                }
+            }, "name", "created", "component", "description");
+        }
+        finally {
+            parser.close();
+        }
+
+        assertEquals(3, elements.size());
+        assertEquals("1.0", elements.get(0).get("name"));
+        assertEquals("100", elements.get(0).get("created"));
+        // nested values and nulls are skipped, fields not asked for are not kept
+        assertFalse(elements.get(0).containsKey("component"));
+        assertFalse(elements.get(0).containsKey("id"));
+        assertFalse(elements.get(1).containsKey("description"));
+        assertEquals("1.2", elements.get(2).get("name"));
+    }
+
+    @Test
+    public void readArrayStopsWhenTheHandlerDeclines() throws IOException {
+        final List<String> names = new ArrayList<String>();
+        JsonStream.read(new ByteArrayInputStream(VERSIONS.getBytes("UTF-8")), 0, JsonStream.arrayReader(
+                new JsonStream.ElementHandler() {
+                    @Override
+                    public boolean element(Map<String, String> fields) {
+                        names.add(fields.get("name"));
+                        return !"1.1".equals(fields.get("name"));
+                    }
+                }, "name"));
+
+        assertEquals(2, names.size());
+        assertEquals("1.1", names.get(1));
+    }
+
+    @Test
+    public void objectReaderKeepsRequestedTopLevelFields() throws IOException {
+        Map<String, String> values = new HashMap<String, String>();
+        String body = "{\"id\":\"sheet\",\"path\":\"components/x/versionPropSheetDef\","
+                + "\"propDefs\":[{\"name\":\"ignored\"}],\"result\":\"SUCCEEDED\"}";
+
+        JsonStream.read(new ByteArrayInputStream(body.getBytes("UTF-8")), 0,
+                JsonStream.objectReader(values, "id", "path", "propDefs"));
+
+        assertEquals(2, values.size());
+        assertEquals("sheet", values.get("id"));
+        assertEquals("components/x/versionPropSheetDef", values.get("path"));
+    }
+
+    @Test
+    public void readPassesTheIndexOfTheResponse() throws IOException {
+        final int[] seen = new int[1];
+        JsonStream.read(new ByteArrayInputStream("{}".getBytes("UTF-8")), 7, new JsonStream.ResponseHandler() {
+            @Override
+            public void response(int index, JsonParser parser) throws IOException {
+                seen[0] = index;
+                assertTrue(JsonStream.readObject(parser).isEmpty());
+            }
+        });
+
+        assertEquals(7, seen[0]);
+    }
+
+    @Test
+    public void readArrayRejectsAnObject() throws IOException {
+        JsonParser parser = JsonStream.parse("{\"name\":\"1.0\"}");
+        try {
+            JsonStream.readArray(parser, new JsonStream.ElementHandler() {
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    return true;
+                }
+            }, "name");
+            fail("An object is not an array");
+        }
+        catch (IOException expected) {
+        }
+        finally {
+            parser.close();
+        }
+    }
+
+    @Test
+    public void readArrayRejectsATruncatedResponse() throws IOException {
+        JsonParser parser = JsonStream.parse("[{\"name\":\"1.0\"},{\"name\":");
+        try {
+            JsonStream.readArray(parser, new JsonStream.ElementHandler() {
+                @Override
+                public boolean element(Map<String, String> fields) {
+                    return true;
+                }
+            }, "name");
+            fail("A truncated response must not parse");
+        }
+        catch (IOException expected) {
+        }
+        finally {
+            parser.close();
+        }
+    }
+}
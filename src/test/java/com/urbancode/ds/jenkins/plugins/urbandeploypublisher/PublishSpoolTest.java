@@ -0,0 +1,140 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.AbortException;
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PublishSpoolTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File rootDir;
+    private FilePath workDir;
+    private TaskListener listener;
+    private List<String> replayed;
+    private Set<String> downSites;
+
+    @Before
+    public void setUp() throws Exception {
+        rootDir = folder.newFolder("jenkins");
+        File work = folder.newFolder("workspace");
+        assertTrue(new File(work, "app.jar").createNewFile());
+        workDir = new FilePath(work);
+        listener = new StreamTaskListener(new ByteArrayOutputStream());
+        replayed = new ArrayList<String>();
+        downSites = new HashSet<String>();
+    }
+
+    @Test
+    public void replaysInSpoolOrderAndRemovesPublishedEntries() throws Exception {
+        PublishSpool spool = newSpool();
+        spool("site", "web", "1.0", spool);
+        spool("site", "web", "1.1", spool);
+        spool("site", "db", "2.0", spool);
+
+        assertEquals(3, spool.size());
+        assertTrue(spool.hasPending("site", "web"));
+        assertFalse(spool.hasPending("other", "web"));
+
+        spool.execute(listener);
+
+        assertEquals(Arrays.asList("site/web/1.0", "site/web/1.1", "site/db/2.0"), replayed);
+        assertEquals(0, spool.size());
+        assertFalse(spool.hasPending("site", "web"));
+        // the staged artifacts of the published entries are deleted
+        assertEquals(0, new File(rootDir, "ucd-spool").list().length);
+    }
+
+    @Test
+    public void failedSiteBlocksItsLaterEntriesOnly() throws Exception {
+        PublishSpool spool = newSpool();
+        spool("down", "web", "1.0", spool);
+        spool("up", "web", "1.0", spool);
+        spool("down", "web", "1.1", spool);
+        spool("up", "web", "1.1", spool);
+        downSites.add("down");
+
+        spool.execute(listener);
+
+        // the second publish to the failed site must not overtake the first
+        assertEquals(Arrays.asList("down/web/1.0", "up/web/1.0", "up/web/1.1"), replayed);
+        assertEquals(2, spool.size());
+        assertTrue(spool.hasPending("down", "web"));
+        assertFalse(spool.hasPending("up", "web"));
+    }
+
+    @Test
+    public void failedEntryWaitsForItsBackoff() throws Exception {
+        PublishSpool spool = newSpool();
+        spool("down", "web", "1.0", spool);
+        downSites.add("down");
+
+        spool.execute(listener);
+        downSites.clear();
+        replayed.clear();
+        spool.execute(listener);
+
+        // the site answers again, but the retry is not due yet
+        assertTrue(replayed.isEmpty());
+        assertEquals(1, spool.size());
+    }
+
+    @Test
+    public void spoolIsReadBackFromDisk() throws Exception {
+        PublishSpool spool = newSpool();
+        spool("site", "web", "1.0", spool);
+        spool("site", "web", "1.1", spool);
+
+        PublishSpool reloaded = newSpool();
+        assertEquals(2, reloaded.size());
+
+        reloaded.execute(listener);
+        assertEquals(Arrays.asList("site/web/1.0", "site/web/1.1"), replayed);
+    }
+
+    private PublishSpool newSpool() {
+        return new PublishSpool(rootDir) {
+            @Override
+            boolean replay(Entry entry, TaskListener listener) throws AbortException {
+                replayed.add(entry.getSiteName() + "/" + entry.getComponent() + "/" + entry.getVersion());
+                if (downSites.contains(entry.getSiteName())) {
+                    throw new AbortException("site '" + entry.getSiteName() + "' is unavailable");
+                }
+                return true;
+            }
+        };
+    }
+
+    private void spool(String siteName, String component, String version, PublishSpool spool)
+    throws IOException, InterruptedException {
+        PublishSpool.Entry entry = new PublishSpool.Entry(siteName, "", null, component, version, "", "",
+                null, null);
+        assertEquals(1, spool.spool(workDir, "*.jar", "", entry));
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Random;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares uploading a large file with a stream copying entity, as the upload path does today,
+ * against an entity that sends the file with {@link FileChannel#transferTo}. Runs only with
+ * -Dudeploy.benchmark=true and prints the time, the bytes allocated by the uploading thread and the
+ * garbage collections of both approaches. The blocking transport hands an entity an output stream,
+ * so the channel transfer still passes through a heap buffer.
+ *
+ */
+public class UploadEntityBenchmark {
+
+    private static final long FILE_SIZE = 512L * 1024 * 1024;
+    private static final int ROUNDS = 3;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void upload() throws Exception {
+        assumeTrue(Boolean.getBoolean("udeploy.benchmark"));
+
+        File file = createFile(FILE_SIZE);
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[64 * 1024];
+                long received = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    received += read;
+                }
+                byte[] body = String.valueOf(received).getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/upload";
+
+        CloseableHttpClient client = HttpClients.createDefault();
+        try {
+            System.out.println("Upload of " + FILE_SIZE / (1024 * 1024) + " MB to a local server");
+
+            // warm up both paths before measuring
+            post(client, url, new FileEntity(file, ContentType.APPLICATION_OCTET_STREAM));
+            post(client, url, new ChannelEntity(file));
+
+            Measurement stream = new Measurement();
+            Measurement channel = new Measurement();
+            for (int round = 0; round < ROUNDS; round++) {
+                stream.start();
+                post(client, url, new FileEntity(file, ContentType.APPLICATION_OCTET_STREAM));
+                stream.stop();
+
+                channel.start();
+                post(client, url, new ChannelEntity(file));
+                channel.stop();
+            }
+
+            System.out.println("Stream copy:         " + stream);
+            System.out.println("FileChannel transfer: " + channel);
+        }
+        finally {
+            client.close();
+            server.stop(0);
+        }
+    }
+
+    private static void post(CloseableHttpClient client, String url, HttpEntity entity) throws IOException {
+        HttpPost post = new HttpPost(url);
+        post.setEntity(entity);
+        try {
+            HttpResponse response = client.execute(post);
+            assertEquals(String.valueOf(FILE_SIZE), EntityUtils.toString(response.getEntity()));
+        }
+        finally {
+            post.releaseConnection();
+        }
+    }
+
+    private File createFile(long size) throws IOException {
+        File file = folder.newFile("artifact.bin");
+        byte[] block = new byte[1024 * 1024];
+        new Random(0).nextBytes(block);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (long written = 0; written < size; written += block.length) {
+                out.write(block);
+            }
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * A request body sent from a file channel
+     */
+    private static class ChannelEntity extends AbstractHttpEntity {
+        final private File file;
+
+        private ChannelEntity(File file) {
+            this.file = file;
+            setContentType(ContentType.APPLICATION_OCTET_STREAM.toString());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            return file.length();
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FileInputStream(file);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            FileChannel in = new FileInputStream(file).getChannel();
+            try {
+                WritableByteChannel target = Channels.newChannel(out);
+                long size = in.size();
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, target);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+    }
+
+    /**
+     * The time, allocation and garbage collections of the measured rounds
+     */
+    private static class Measurement {
+        private long time;
+        private long allocated;
+        private long collections;
+        private long startTime;
+        private long startAllocated;
+        private long startCollections;
+
+        private void start() {
+            startCollections = collections();
+            startAllocated = allocatedBytes();
+            startTime = System.nanoTime();
+        }
+
+        private void stop() {
+            time += System.nanoTime() - startTime;
+            allocated += allocatedBytes() - startAllocated;
+            collections += collections() - startCollections;
+        }
+
+        @Override
+        public String toString() {
+            long millis = time / ROUNDS / 1000000;
+            long throughput = millis > 0 ? FILE_SIZE * 1000 / millis / (1024 * 1024) : 0;
+            return millis + " ms per upload (" + throughput + " MB/s), " + allocated / ROUNDS / 1024
+                    + " KB allocated, " + collections + " collections";
+        }
+
+        private static long collections() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+
+        // the heap allocated by the uploading thread, where the JVM reports it
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                        Thread.currentThread().getId());
+            }
+            return 0;
+        }
+    }
+}
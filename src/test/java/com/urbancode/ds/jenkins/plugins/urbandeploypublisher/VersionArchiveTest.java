@@ -0,0 +1,123 @@
+/**
+ * (c) Copyright IBM Corporation 2017.
+ * This is licensed under the following license.
+ * The Apache License, Version 2.0 (http://www.apache.org/licenses/LICENSE-2.0)
+ * U.S. Government Users Restricted Rights:  Use, duplication or disclosure restricted by GSA ADP Schedule Contract with IBM Corp.
+ */
+package com.urbancode.ds.jenkins.plugins.urbandeploypublisher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VersionArchiveTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workDir;
+    private String longPath;
+
+    @Before
+    public void setUp() throws IOException {
+        workDir = folder.newFolder("workspace");
+        write("app.jar", "jar");
+        write("bin/start.sh", "#!/bin/sh");
+        assertTrue(new File(workDir, "bin/start.sh").setExecutable(true));
+        // longer than the 100 characters a plain tar header holds
+        longPath = "lib/" + repeat("nested/", 15) + "deep.properties";
+        write(longPath, "key=value");
+    }
+
+    @Test
+    public void archiveNames() {
+        assertEquals("artifacts.tar", VersionArchive.getArchiveName(false));
+        assertEquals("artifacts.tar.gz", VersionArchive.getArchiveName(true));
+    }
+
+    @Test
+    public void archiveHoldsFilesInOrder() throws IOException {
+        File archive = folder.newFile(VersionArchive.getArchiveName(false));
+        VersionArchive.create(workDir, new String[] {"app.jar", "bin/start.sh", longPath}, archive, false);
+
+        verify(new BufferedInputStream(new FileInputStream(archive)));
+    }
+
+    @Test
+    public void compressedArchiveHoldsFilesInOrder() throws IOException {
+        File archive = folder.newFile(VersionArchive.getArchiveName(true));
+        VersionArchive.create(workDir, new String[] {"app.jar", "bin/start.sh", longPath}, archive, true);
+
+        verify(new GzipCompressorInputStream(new BufferedInputStream(new FileInputStream(archive))));
+    }
+
+    private void verify(InputStream in) throws IOException {
+        TarArchiveInputStream tarIn = new TarArchiveInputStream(in);
+        try {
+            TarArchiveEntry entry = tarIn.getNextTarEntry();
+            assertEquals("app.jar", entry.getName());
+            assertEquals("jar", read(tarIn));
+
+            entry = tarIn.getNextTarEntry();
+            assertEquals("bin/start.sh", entry.getName());
+            assertEquals(0100755, entry.getMode());
+            assertEquals("#!/bin/sh", read(tarIn));
+
+            entry = tarIn.getNextTarEntry();
+            assertEquals(longPath, entry.getName());
+            assertEquals("key=value", read(tarIn));
+
+            assertNull(tarIn.getNextTarEntry());
+        }
+        finally {
+            tarIn.close();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(workDir, path);
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static String repeat(String text, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+}